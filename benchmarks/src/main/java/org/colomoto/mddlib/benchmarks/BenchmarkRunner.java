@@ -0,0 +1,38 @@
+package org.colomoto.mddlib.benchmarks;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks and save the results in JSON format.
+ * <p>
+ * The first argument is the result file (default: mddlib-benchmarks.json),
+ * other arguments are passed to JMH, for example a regular expression selecting the benchmarks
+ * or "-p size=6" to restrict a parameter.
+ *
+ * @author Aurelien Naldi
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		String output = "mddlib-benchmarks.json";
+		if (args.length > 0 && args[0].endsWith(".json")) {
+			output = args[0];
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.resultFormat(ResultFormatType.JSON)
+				.result(output)
+				.build();
+		new Runner(options).run();
+	}
+}
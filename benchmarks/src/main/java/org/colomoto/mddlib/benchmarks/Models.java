@@ -0,0 +1,259 @@
+package org.colomoto.mddlib.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.MDDManagerFactory;
+import org.colomoto.mddlib.MDDVariable;
+import org.colomoto.mddlib.MDDVariableFactory;
+import org.colomoto.mddlib.operators.MDDBaseOperators;
+
+/**
+ * Build the models used by the benchmarks.
+ * Random models use a fixed seed, so that successive runs can be compared.
+ *
+ * @author Aurelien Naldi
+ */
+public class Models {
+
+	private Models() {
+		// no instance of this class
+	}
+
+	/**
+	 * Solve the n-queens problem with one Boolean variable for each cell of the board.
+	 *
+	 * @param ddmanager	a manager with N*N Boolean variables
+	 * @param N			the size of the board
+	 * @return the MDD of all solutions
+	 */
+	public static int booleanQueens(MDDManager ddmanager, int N) {
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		int nbvar = N*N;
+		int[][] basics = new int[nbvar][2];
+		for (int i=0 ; i<nbvar ; i++) {
+			basics[i][0] = variables[i].getNode(1, 0);
+			basics[i][1] = variables[i].getNode(0, 1);
+		}
+
+		List<Integer> constraints = new ArrayList<Integer>();
+
+		// one queen on each row
+		int[] elts = new int[N];
+		for (int i=0 ; i<N ; i++) {
+			for (int j=0 ; j<N ; j++) {
+				elts[j] = basics[i*N+j][1];
+			}
+			constraints.add(MDDBaseOperators.OR.combine(ddmanager, elts));
+		}
+
+		// each cell is in conflict with cells on the same row, column or diagonal
+		for (int i=0 ; i<N ; i++) {
+			for (int j=0 ; j<N ; j++) {
+				int pos = i*N+j;
+				for (int k=0 ; k<N ; k++) {
+					if (k>i) {
+						constraints.add(nand(ddmanager, basics, pos, k*N+j));
+					}
+					if (k>j) {
+						constraints.add(nand(ddmanager, basics, pos, i*N+k));
+						int dj = k-j;
+						if (i+dj < N) {
+							constraints.add(nand(ddmanager, basics, pos, (i+dj)*N+k));
+						}
+						if (i-dj >= 0) {
+							constraints.add(nand(ddmanager, basics, pos, (i-dj)*N+k));
+						}
+					}
+				}
+			}
+		}
+
+		int result = conjoin(ddmanager, constraints);
+		for (int[] b: basics) {
+			ddmanager.free(b[0]);
+			ddmanager.free(b[1]);
+		}
+		return result;
+	}
+
+	/**
+	 * Solve the n-queens problem with one multi-valued variable for each row, giving the column of its queen.
+	 *
+	 * @param ddmanager	a manager with N variables taking N values
+	 * @param N			the size of the board
+	 * @return the MDD of all solutions
+	 */
+	public static int multivaluedQueens(MDDManager ddmanager, int N) {
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		int[][] basics = new int[N*N][2];
+		for (int i=0 ; i<N ; i++) {
+			for (int j=0 ; j<N ; j++) {
+				basics[i*N+j][0] = variables[i].getSimpleNode(1, 0, j, j);
+				basics[i*N+j][1] = variables[i].getSimpleNode(0, 1, j, j);
+			}
+		}
+
+		List<Integer> constraints = new ArrayList<Integer>();
+		for (int i=0 ; i<N ; i++) {
+			for (int j=0 ; j<N ; j++) {
+				int pos = i*N+j;
+				for (int k=Math.min(i,j)+1 ; k<N ; k++) {
+					if (k>i) {
+						constraints.add(nand(ddmanager, basics, pos, k*N+j));
+					}
+					if (k>j) {
+						int dj = k-j;
+						if (i+dj < N) {
+							constraints.add(nand(ddmanager, basics, pos, (i+dj)*N+k));
+						}
+						if (i-dj >= 0) {
+							constraints.add(nand(ddmanager, basics, pos, (i-dj)*N+k));
+						}
+					}
+				}
+			}
+		}
+
+		int result = conjoin(ddmanager, constraints);
+		for (int[] b: basics) {
+			ddmanager.free(b[0]);
+			ddmanager.free(b[1]);
+		}
+		return result;
+	}
+
+	public static MDDManager getBooleanQueensManager(int N) {
+		List<String> keys = new ArrayList<String>();
+		for (int i=0 ; i<N ; i++) {
+			for (int j=0 ; j<N ; j++) {
+				keys.add(i+","+j);
+			}
+		}
+		return MDDManagerFactory.getManager(keys, 2);
+	}
+
+	public static MDDManager getMultivaluedQueensManager(int N) {
+		MDDVariableFactory vbuilder = new MDDVariableFactory();
+		for (int i=0 ; i<N ; i++) {
+			vbuilder.add(""+i, (byte)N);
+		}
+		return MDDManagerFactory.getManager(vbuilder, 2);
+	}
+
+	private static int nand(MDDManager ddmanager, int[][] basics, int p1, int p2) {
+		return MDDBaseOperators.OR.combine(ddmanager, basics[p1][0], basics[p2][0]);
+	}
+
+	private static int conjoin(MDDManager ddmanager, List<Integer> constraints) {
+		int result = 1;
+		for (int c: constraints) {
+			int next = MDDBaseOperators.AND.combine(ddmanager, result, c);
+			ddmanager.free(result);
+			ddmanager.free(c);
+			result = next;
+		}
+		return result;
+	}
+
+	/**
+	 * Create the variables of a random multi-valued network: one third of the components
+	 * take 3 values, the other ones are Boolean.
+	 *
+	 * @param size	the number of components
+	 * @return a variable factory defining the components
+	 */
+	public static MDDVariableFactory getNetworkVariables(int size) {
+		MDDVariableFactory vbuilder = new MDDVariableFactory();
+		for (int i=0 ; i<size ; i++) {
+			vbuilder.add("c"+i, (byte)(i%3 == 0 ? 3 : 2));
+		}
+		return vbuilder;
+	}
+
+	/**
+	 * Build random functions for all components of a multi-valued network.
+	 * Each non-zero target value of a component is reached through a disjunction of random
+	 * conjunctions of regulator levels.
+	 *
+	 * @param ddmanager		a manager created with <code>getNetworkVariables</code> and 3 leaves
+	 * @param regulators	the number of regulators of each component
+	 * @param seed			the seed of the random generator
+	 * @return the MDD of the function of each component
+	 */
+	public static int[] randomNetwork(MDDManager ddmanager, int regulators, long seed) {
+		Random random = new Random(seed);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		int[] functions = new int[variables.length];
+		for (int c=0 ; c<variables.length ; c++) {
+			int function = 0;
+			for (int target=1 ; target<variables[c].nbval ; target++) {
+				for (int clause=0 ; clause<3 ; clause++) {
+					int term = target;
+					for (int r=0 ; r<regulators ; r++) {
+						MDDVariable regulator = variables[random.nextInt(variables.length)];
+						int threshold = 1 + random.nextInt(regulator.nbval - 1);
+						int literal;
+						if (random.nextBoolean()) {
+							literal = regulator.getSimpleNode(0, target, threshold, regulator.nbval-1);
+						} else {
+							literal = regulator.getSimpleNode(target, 0, threshold, regulator.nbval-1);
+						}
+						int next = MDDBaseOperators.AND.combine(ddmanager, term, literal);
+						ddmanager.free(term);
+						ddmanager.free(literal);
+						term = next;
+					}
+					int next = MDDBaseOperators.OR.combine(ddmanager, function, term);
+					ddmanager.free(function);
+					ddmanager.free(term);
+					function = next;
+				}
+			}
+			functions[c] = function;
+		}
+		return functions;
+	}
+
+	/**
+	 * Generate random logical expressions over a list of Boolean operands.
+	 *
+	 * @param operands	the names of the operands
+	 * @param count		the number of expressions
+	 * @param size		the number of operands in each expression
+	 * @param seed		the seed of the random generator
+	 * @return the expressions
+	 */
+	public static String[] randomExpressions(List<String> operands, int count, int size, long seed) {
+		Random random = new Random(seed);
+		String[] expressions = new String[count];
+		for (int e=0 ; e<count ; e++) {
+			StringBuilder sb = new StringBuilder();
+			int open = 0;
+			for (int i=0 ; i<size ; i++) {
+				if (i > 0) {
+					sb.append(random.nextBoolean() ? " & " : " | ");
+				}
+				if (i < size-1 && random.nextInt(4) == 0) {
+					sb.append("(");
+					open++;
+				}
+				if (random.nextInt(3) == 0) {
+					sb.append("!");
+				}
+				sb.append(operands.get(random.nextInt(operands.size())));
+				if (open > 0 && random.nextInt(3) == 0) {
+					sb.append(")");
+					open--;
+				}
+			}
+			for ( ; open > 0 ; open--) {
+				sb.append(")");
+			}
+			expressions[e] = sb.toString();
+		}
+		return expressions;
+	}
+}
@@ -0,0 +1,45 @@
+package org.colomoto.mddlib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.MDDManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Build the functions of random multi-valued logical networks.
+ *
+ * @author Aurelien Naldi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkBenchmark {
+
+	@Param({"50", "200"})
+	public int size;
+
+	@Param({"3", "6"})
+	public int regulators;
+
+	@Param({"true", "false"})
+	public boolean threadSafe;
+
+	@Benchmark
+	public int[] buildNetwork() {
+		MDDManager ddmanager = MDDManagerFactory.getManager(Models.getNetworkVariables(size), 3, threadSafe);
+		return Models.randomNetwork(ddmanager, regulators, 42);
+	}
+}
@@ -0,0 +1,72 @@
+package org.colomoto.mddlib.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.logicalfunction.FunctionNode;
+import org.colomoto.mddlib.logicalfunction.FunctionParser;
+import org.colomoto.mddlib.logicalfunction.SimpleOperandFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parse logical functions, and build their MDDs.
+ *
+ * @author Aurelien Naldi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+	@Param({"5", "20"})
+	public int size;
+
+	private SimpleOperandFactory<String> opFactory;
+	private FunctionParser parser;
+	private String[] expressions;
+
+	@Setup
+	public void setup() {
+		List<String> operands = new ArrayList<String>();
+		for (int i=0 ; i<50 ; i++) {
+			operands.add("var"+i);
+		}
+		opFactory = new SimpleOperandFactory<String>(operands);
+		parser = new FunctionParser();
+		expressions = Models.randomExpressions(operands, 100, size, 42);
+	}
+
+	@Benchmark
+	public void compile(Blackhole bh) {
+		for (String expression: expressions) {
+			bh.consume(parser.compile(opFactory, expression));
+		}
+	}
+
+	@Benchmark
+	public void compileAndBuild(Blackhole bh) {
+		MDDManager ddmanager = opFactory.getMDDManager();
+		for (String expression: expressions) {
+			FunctionNode f = parser.compile(opFactory, expression);
+			int node = f.getMDD(ddmanager);
+			bh.consume(node);
+			ddmanager.free(node);
+		}
+	}
+}
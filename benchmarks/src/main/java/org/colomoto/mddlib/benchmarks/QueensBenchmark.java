@@ -0,0 +1,55 @@
+package org.colomoto.mddlib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.PathSearcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Solve the n-queens problem in a fresh store, with Boolean or multi-valued variables.
+ * This covers node creation, the unique table and the AND/OR operators.
+ * <p>
+ * Larger boards can be selected with JMH options, for example "-p size=10",
+ * but operators do not cache intermediate results and the cost grows very quickly.
+ *
+ * @author Aurelien Naldi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueensBenchmark {
+
+	@Param({"6", "8"})
+	public int size;
+
+	@Benchmark
+	public int booleanQueens() {
+		MDDManager ddmanager = Models.getBooleanQueensManager(size);
+		return countSolutions(ddmanager, Models.booleanQueens(ddmanager, size));
+	}
+
+	@Benchmark
+	public int multivaluedQueens() {
+		MDDManager ddmanager = Models.getMultivaluedQueensManager(size);
+		return countSolutions(ddmanager, Models.multivaluedQueens(ddmanager, size));
+	}
+
+	private int countSolutions(MDDManager ddmanager, int node) {
+		PathSearcher searcher = new PathSearcher(ddmanager, 1);
+		searcher.setNode(node);
+		return searcher.countPaths();
+	}
+}
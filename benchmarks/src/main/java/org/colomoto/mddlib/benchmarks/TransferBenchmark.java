@@ -0,0 +1,98 @@
+package org.colomoto.mddlib.benchmarks;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.colomoto.mddlib.IndexMapper;
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.MDDManagerFactory;
+import org.colomoto.mddlib.MDDMapper;
+import org.colomoto.mddlib.MDDVariableFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Move MDDs between stores: transfer with MDDMapper, using the same or the reverse order,
+ * and serialisation with dumpMDD/parseDump.
+ *
+ * @author Aurelien Naldi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark {
+
+	private static final int SIZE = 100;
+
+	@Param({"true", "false"})
+	public boolean reverse;
+
+	private MDDManager source;
+	private int[] functions;
+	private String[] dumps;
+	private MDDVariableFactory targetVariables;
+	private IndexMapper indexMapper;
+
+	@Setup
+	public void setup() {
+		MDDVariableFactory variables = Models.getNetworkVariables(SIZE);
+		source = MDDManagerFactory.getManager(variables, 3);
+		functions = Models.randomNetwork(source, 5, 42);
+		dumps = new String[functions.length];
+		for (int i=0 ; i<functions.length ; i++) {
+			dumps[i] = source.dumpMDD(functions[i]);
+		}
+
+		List<Object> keys = new ArrayList<Object>(variables);
+		if (reverse) {
+			Collections.reverse(keys);
+		}
+		targetVariables = new MDDVariableFactory();
+		for (Object key: keys) {
+			targetVariables.add(key, variables.getNbValue(key));
+		}
+		indexMapper = new IndexMapper() {
+			@Override
+			public int get(int idx) {
+				return reverse ? SIZE-1-idx : idx;
+			}
+		};
+	}
+
+	@Benchmark
+	public int[] transfer() {
+		MDDManager target = MDDManagerFactory.getManager(targetVariables, 3);
+		return new MDDMapper(source, target, indexMapper).mapMDD(functions);
+	}
+
+	@Benchmark
+	public void dump(Blackhole bh) {
+		for (int f: functions) {
+			bh.consume(source.dumpMDD(f));
+		}
+	}
+
+	@Benchmark
+	public void parseDump(Blackhole bh) throws ParseException {
+		MDDManager target = MDDManagerFactory.getManager(targetVariables, 3);
+		for (String dump: dumps) {
+			bh.consume(target.parseDump(dump));
+		}
+	}
+}
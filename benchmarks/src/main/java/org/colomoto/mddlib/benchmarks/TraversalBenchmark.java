@@ -0,0 +1,89 @@
+package org.colomoto.mddlib.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.MDDManagerFactory;
+import org.colomoto.mddlib.PathSearcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Browse the functions of a random multi-valued network: look-up of states, groups of states,
+ * and enumeration of all paths.
+ *
+ * @author Aurelien Naldi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraversalBenchmark {
+
+	private static final int SIZE = 100;
+
+	private MDDManager ddmanager;
+	private int[] functions;
+	private byte[][] states;
+	private byte[][] groups;
+
+	@Setup
+	public void setup() {
+		ddmanager = MDDManagerFactory.getManager(Models.getNetworkVariables(SIZE), 3);
+		functions = Models.randomNetwork(ddmanager, 5, 42);
+
+		Random random = new Random(42);
+		states = new byte[1000][SIZE];
+		groups = new byte[1000][SIZE];
+		for (int s=0 ; s<states.length ; s++) {
+			for (int i=0 ; i<SIZE ; i++) {
+				int nbval = i%3 == 0 ? 3 : 2;
+				states[s][i] = (byte)random.nextInt(nbval);
+				// leave one third of the variables free in the groups
+				groups[s][i] = random.nextInt(3) == 0 ? -1 : states[s][i];
+			}
+		}
+	}
+
+	@Benchmark
+	public void reach(Blackhole bh) {
+		for (byte[] state: states) {
+			for (int f: functions) {
+				bh.consume(ddmanager.reach(f, state));
+			}
+		}
+	}
+
+	@Benchmark
+	public void groupReach(Blackhole bh) {
+		for (byte[] group: groups) {
+			for (int f: functions) {
+				bh.consume(ddmanager.groupReach(f, group));
+			}
+		}
+	}
+
+	@Benchmark
+	public void enumeratePaths(Blackhole bh) {
+		PathSearcher searcher = new PathSearcher(ddmanager, 1, Integer.MAX_VALUE);
+		for (int f: functions) {
+			int[] path = searcher.setNode(f);
+			for (int value: searcher) {
+				bh.consume(value);
+				bh.consume(path);
+			}
+		}
+	}
+}
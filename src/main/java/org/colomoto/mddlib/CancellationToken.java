@@ -0,0 +1,42 @@
+package org.colomoto.mddlib;
+
+/**
+ * Cooperative cancellation of long-running operations.
+ * <p>
+ * A token is attached to a MDD manager, operators check it during their recursion
+ * and stop with a <code>MDDLimitException</code> once it has been cancelled.
+ * The token can be cancelled from any thread.
+ * 
+ * @see MDDManager#setCancellationToken(CancellationToken)
+ * 
+ * @author Aurelien Naldi
+ */
+public class CancellationToken {
+
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Request the cancellation of the running operations.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if the cancellation was requested
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Stop the current operation if the cancellation was requested.
+	 * 
+	 * @throws MDDLimitException if the token was cancelled
+	 */
+	public void check() {
+		if (cancelled) {
+			throw new MDDLimitException("Operation cancelled");
+		}
+	}
+}
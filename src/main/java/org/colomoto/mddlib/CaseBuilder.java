@@ -0,0 +1,186 @@
+package org.colomoto.mddlib;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Build nodes choosing between several MDDs: a multi-valued if-then-else.
+ * <p>
+ * The choices can depend on any variable, including the variable used to select them,
+ * or variables ranked before it. The result is then obtained by a joint recursion on
+ * the selector and all choices, which is memoized for the lifetime of the builder.
+ * <p>
+ * Callers must keep the choices in use as long as the builder is in use, and call
+ * <code>release()</code> when done.
+ *
+ * @author Aurelien Naldi
+ */
+class CaseBuilder {
+
+	private final MDDManager ddmanager;
+	private final Map<CaseKey, Integer> cache = new HashMap<CaseKey, Integer>();
+
+	CaseBuilder(MDDManager ddmanager) {
+		this.ddmanager = ddmanager;
+	}
+
+	/**
+	 * Select among several MDDs according to the leaves of a selector MDD.
+	 *
+	 * @param selector	a MDD whose leaves are indices in the list of choices
+	 * @param choices	the MDDs to select
+	 *
+	 * @return a MDD giving <code>choices[v]</code> where the selector reaches the leaf v
+	 */
+	int select(int selector, int[] choices) {
+		if (ddmanager.isleaf(selector)) {
+			if (selector >= choices.length) {
+				throw new RuntimeException("Selected value out of range: "+selector);
+			}
+			return ddmanager.use(choices[selector]);
+		}
+
+		CaseKey key = new CaseKey(selector, choices);
+		Integer cached = cache.get(key);
+		if (cached != null) {
+			return ddmanager.use(cached);
+		}
+
+		MDDVariable top = ddmanager.getNodeVariable(selector);
+		for (int c: choices) {
+			top = MDDVariable.selectFirstVariable(top, ddmanager.getNodeVariable(c));
+		}
+
+		int[] children = new int[top.nbval];
+		int[] next = new int[choices.length];
+		int done = 0;
+		int result;
+		try {
+			for ( ; done<children.length ; done++) {
+				for (int i=0 ; i<next.length ; i++) {
+					next[i] = cofactor(choices[i], top, done);
+				}
+				children[done] = select(cofactor(selector, top, done), next);
+			}
+			result = top.getNodeFree(children);
+		} catch (MDDLimitException e) {
+			release(children, done);
+			throw e;
+		}
+		cache.put(key, ddmanager.use(result));
+		return result;
+	}
+
+	/**
+	 * Select among several MDDs according to the value of a variable.
+	 *
+	 * @param var		the selecting variable
+	 * @param choices	one MDD for each value of the variable
+	 *
+	 * @return a MDD giving <code>choices[v]</code> when <code>var</code> takes the value v
+	 */
+	int branch(MDDVariable var, int[] choices) {
+		MDDVariable top = var;
+		for (int c: choices) {
+			top = MDDVariable.selectFirstVariable(top, ddmanager.getNodeVariable(c));
+		}
+
+		int[] children = new int[top.nbval];
+		if (top == var) {
+			// the choices do not depend on higher variables: build the node directly
+			for (int v=0 ; v<children.length ; v++) {
+				children[v] = ddmanager.use(cofactor(choices[v], var, v));
+			}
+			try {
+				return var.getNodeFree(children);
+			} catch (MDDLimitException e) {
+				release(children, children.length);
+				throw e;
+			}
+		}
+
+		CaseKey key = new CaseKey(-1-var.order, choices);
+		Integer cached = cache.get(key);
+		if (cached != null) {
+			return ddmanager.use(cached);
+		}
+
+		int[] next = new int[choices.length];
+		int done = 0;
+		int result;
+		try {
+			for ( ; done<children.length ; done++) {
+				for (int i=0 ; i<next.length ; i++) {
+					next[i] = cofactor(choices[i], top, done);
+				}
+				children[done] = branch(var, next);
+			}
+			result = top.getNodeFree(children);
+		} catch (MDDLimitException e) {
+			release(children, done);
+			throw e;
+		}
+		cache.put(key, ddmanager.use(result));
+		return result;
+	}
+
+	/**
+	 * Release all cached results.
+	 */
+	void release() {
+		for (int node: cache.values()) {
+			ddmanager.free(node);
+		}
+		cache.clear();
+	}
+
+	/**
+	 * Release the children computed before an interruption.
+	 */
+	private void release(int[] children, int done) {
+		for (int i=0 ; i<done ; i++) {
+			ddmanager.free(children[i]);
+		}
+	}
+
+	/**
+	 * Restrict a node to a given value of a variable.
+	 * Only the root is inspected: the variable must not appear deeper in the MDD.
+	 */
+	private int cofactor(int node, MDDVariable var, int value) {
+		if (ddmanager.getNodeVariable(node) == var) {
+			return ddmanager.getChild(node, value);
+		}
+		return node;
+	}
+}
+
+/**
+ * Memoization key for the <code>CaseBuilder</code>.
+ */
+class CaseKey {
+	private final int selector;
+	private final int[] choices;
+	private final int hash;
+
+	CaseKey(int selector, int[] choices) {
+		this.selector = selector;
+		this.choices = choices.clone();
+		this.hash = 31*selector + Arrays.hashCode(choices);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof CaseKey)) {
+			return false;
+		}
+		CaseKey other = (CaseKey)o;
+		return selector == other.selector && Arrays.equals(choices, other.choices);
+	}
+}
@@ -0,0 +1,52 @@
+package org.colomoto.mddlib;
+
+/**
+ * Comparison between a value and a bound, used by linear constraints.
+ *
+ * @author Aurelien Naldi
+ */
+public enum Comparison {
+
+	/** the value is lower than the bound */
+	LT,
+
+	/** the value is lower than or equal to the bound */
+	LE,
+
+	/** the value equals the bound */
+	EQ,
+
+	/** the value differs from the bound */
+	NE,
+
+	/** the value is greater than or equal to the bound */
+	GE,
+
+	/** the value is greater than the bound */
+	GT;
+
+	/**
+	 * Compare a value with a bound.
+	 *
+	 * @param value	the compared value
+	 * @param bound	the bound
+	 *
+	 * @return true if the value satisfies this comparison
+	 */
+	public boolean test(long value, long bound) {
+		switch (this) {
+		case LT:
+			return value < bound;
+		case LE:
+			return value <= bound;
+		case EQ:
+			return value == bound;
+		case NE:
+			return value != bound;
+		case GE:
+			return value >= bound;
+		default:
+			return value > bound;
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package org.colomoto.mddlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build the MDDs of common constraints on a list of variables directly, without applying operators.
+ * <p>
+ * Cardinality constraints count the <i>active</i> variables, i.e. the variables taking a non-zero value.
+ * Their MDD is built bottom-up, one level for each variable, with one node for each number of active
+ * variables above this level. Counts which can no longer change the outcome are merged: counts above the
+ * maximum all fail, and without maximum, counts above the minimum are all satisfied.
+ * With n variables and a bound k, the MDD is thus built in O(n*k) steps and has at most O(n*k) nodes.
+ * <p>
+ * Linear constraints compare a weighted sum of the values of the variables with a bound.
+ * Their MDD is built level by level, with one node for each distinct partial sum of the variables
+ * above this level. Partial sums for which the outcome no longer depends on the remaining variables
+ * are replaced by a leaf. The number of nodes on a level is thus bounded by the number of distinct partial sums,
+ * which remains polynomial for bounded weights.
+ * <p>
+ * All MDDs returned by the builder must be freed by the caller.
+ *
+ * @author Aurelien Naldi
+ */
+public class ConstraintBuilder {
+
+	private final MDDManager ddmanager;
+
+	/**
+	 * Create a builder for constraints stored in a given manager.
+	 *
+	 * @param ddmanager the MDDManager in which the MDDs will be stored.
+	 */
+	public ConstraintBuilder(MDDManager ddmanager) {
+		this.ddmanager = ddmanager;
+	}
+
+	/**
+	 * Build a constraint satisfied when at most k variables are active.
+	 *
+	 * @param variables	the constrained variables
+	 * @param k			the maximal number of active variables
+	 *
+	 * @return a Boolean MDD
+	 */
+	public int atMost(MDDVariable[] variables, int k) {
+		return cardinality(variables, 0, k);
+	}
+
+	/**
+	 * Build a constraint satisfied when at least k variables are active.
+	 *
+	 * @param variables	the constrained variables
+	 * @param k			the minimal number of active variables
+	 *
+	 * @return a Boolean MDD
+	 */
+	public int atLeast(MDDVariable[] variables, int k) {
+		return cardinality(variables, k, variables.length);
+	}
+
+	/**
+	 * Build a constraint satisfied when exactly k variables are active.
+	 *
+	 * @param variables	the constrained variables
+	 * @param k			the number of active variables
+	 *
+	 * @return a Boolean MDD
+	 */
+	public int exactly(MDDVariable[] variables, int k) {
+		return cardinality(variables, k, k);
+	}
+
+	/**
+	 * Build a constraint satisfied when the number of active variables is in a given range.
+	 *
+	 * @param variables	the constrained variables
+	 * @param min		the minimal number of active variables
+	 * @param max		the maximal number of active variables
+	 *
+	 * @return a Boolean MDD
+	 */
+	public int cardinality(MDDVariable[] variables, int min, int max) {
+		int[] indices = sort(variables);
+		MDDVariable[] sorted = new MDDVariable[indices.length];
+		for (int i=0 ; i<indices.length ; i++) {
+			sorted[i] = variables[indices[i]];
+		}
+		min = Math.max(min, 0);
+		max = Math.min(max, sorted.length);
+		if (min > max) {
+			return 0;
+		}
+
+		// the last count merges all counts leading to the same outcome:
+		// without maximum, counts above the minimum are satisfied, otherwise counts above the maximum fail
+		int saturated = max < sorted.length ? max+1 : min;
+		int[] layer = new int[saturated+1];
+		for (int c=min ; c<=Math.min(max, saturated) ; c++) {
+			layer[c] = 1;
+		}
+
+		for (int level=sorted.length-1 ; level>=0 ; level--) {
+			MDDVariable var = sorted[level];
+			// at most "level" variables are active above this level
+			int[] next = new int[Math.min(level, saturated)+1];
+			int done = 0;
+			try {
+				for ( ; done<next.length ; done++) {
+					next[done] = getNode(var, layer[done], layer[Math.min(done+1, saturated)]);
+				}
+			} catch (MDDLimitException e) {
+				free(next, done);
+				free(layer, layer.length);
+				throw e;
+			}
+			free(layer, layer.length);
+			layer = next;
+		}
+		return layer[0];
+	}
+
+	/**
+	 * Build a linear constraint: <code>sum(weights[i] * value(variables[i])) comparison bound</code>.
+	 *
+	 * @param variables		the constrained variables
+	 * @param weights		the weight of each variable
+	 * @param comparison	the comparison between the weighted sum and the bound
+	 * @param bound			the bound
+	 *
+	 * @return a Boolean MDD
+	 */
+	public int linear(MDDVariable[] variables, int[] weights, Comparison comparison, int bound) {
+		if (weights.length != variables.length) {
+			throw new RuntimeException("Linear constraint: "+variables.length+" variables but "+weights.length+" weights");
+		}
+		int[] indices = sort(variables);
+		LinearConstraint constraint = new LinearConstraint(indices.length, comparison, bound);
+		for (int i=0 ; i<indices.length ; i++) {
+			constraint.variables[i] = variables[indices[i]];
+			constraint.weights[i] = weights[indices[i]];
+		}
+		for (int level=indices.length-1 ; level>=0 ; level--) {
+			long contribution = (long)constraint.weights[level] * (constraint.variables[level].nbval-1);
+			constraint.lowest[level] = constraint.lowest[level+1] + Math.min(contribution, 0);
+			constraint.highest[level] = constraint.highest[level+1] + Math.max(contribution, 0);
+		}
+
+		try {
+			return ddmanager.use(constraint.getNode(0, 0));
+		} finally {
+			constraint.release();
+		}
+	}
+
+	/**
+	 * Get a node choosing between two children depending on the activity of a variable.
+	 */
+	private int getNode(MDDVariable var, int inactive, int active) {
+		if (var.nbval == 2) {
+			return var.getNode(inactive, active);
+		}
+		int[] children = new int[var.nbval];
+		Arrays.fill(children, active);
+		children[0] = inactive;
+		return var.getNode(children);
+	}
+
+	private void free(int[] nodes, int count) {
+		for (int i=0 ; i<count ; i++) {
+			ddmanager.free(nodes[i]);
+		}
+	}
+
+	/**
+	 * Sort variables following their order in the store, which is the order of the levels of the MDD.
+	 *
+	 * @return the indices of the variables, in the order of the levels
+	 */
+	private static int[] sort(final MDDVariable[] variables) {
+		Integer[] sorted = new Integer[variables.length];
+		for (int i=0 ; i<sorted.length ; i++) {
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Integer.compare(variables[i1].order, variables[i2].order);
+			}
+		});
+		int[] indices = new int[sorted.length];
+		for (int i=0 ; i<sorted.length ; i++) {
+			indices[i] = sorted[i];
+			if (i > 0 && variables[indices[i]] == variables[indices[i-1]]) {
+				throw new RuntimeException("Duplicated variable in constraint: "+variables[indices[i]]);
+			}
+		}
+		return indices;
+	}
+
+
+	/**
+	 * Nodes of a linear constraint, memoized for each level and partial sum.
+	 */
+	private class LinearConstraint {
+
+		final MDDVariable[] variables;
+		final int[] weights;
+		final Comparison comparison;
+		final long bound;
+
+		// lowest and highest contribution of the variables from each level
+		final long[] lowest;
+		final long[] highest;
+
+		final List<Map<Long, Integer>> nodes;
+
+		LinearConstraint(int size, Comparison comparison, long bound) {
+			this.variables = new MDDVariable[size];
+			this.weights = new int[size];
+			this.comparison = comparison;
+			this.bound = bound;
+			this.lowest = new long[size+1];
+			this.highest = new long[size+1];
+			this.nodes = new ArrayList<Map<Long, Integer>>(size);
+			for (int i=0 ; i<size ; i++) {
+				nodes.add(new HashMap<Long, Integer>());
+			}
+		}
+
+		/**
+		 * Get the node for a level and a partial sum of the variables above it.
+		 * The returned node is kept by the memoization table.
+		 */
+		int getNode(int level, long sum) {
+			int leaf = getLeaf(level, sum);
+			if (leaf >= 0) {
+				return leaf;
+			}
+
+			Map<Long, Integer> memo = nodes.get(level);
+			Integer known = memo.get(sum);
+			if (known != null) {
+				return known;
+			}
+
+			MDDVariable var = variables[level];
+			int[] children = new int[var.nbval];
+			for (int v=0 ; v<children.length ; v++) {
+				children[v] = getNode(level+1, sum + (long)weights[level]*v);
+			}
+			int node = var.getNode(children);
+			memo.put(sum, node);
+			return node;
+		}
+
+		/**
+		 * Check if the outcome of a partial sum is fixed.
+		 *
+		 * @return the value of the leaf or -1 if the outcome still depends on the remaining variables
+		 */
+		private int getLeaf(int level, long sum) {
+			long low = sum + lowest[level];
+			long high = sum + highest[level];
+			boolean result = comparison.test(low, bound);
+			if (low == high) {
+				return result ? 1 : 0;
+			}
+			switch (comparison) {
+			case EQ:
+			case NE:
+				if (bound < low || bound > high) {
+					return result ? 1 : 0;
+				}
+				return -1;
+			default:
+				// monotonic comparison
+				if (result == comparison.test(high, bound)) {
+					return result ? 1 : 0;
+				}
+				return -1;
+			}
+		}
+
+		void release() {
+			for (Map<Long, Integer> memo: nodes) {
+				for (int node: memo.values()) {
+					ddmanager.free(node);
+				}
+			}
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package org.colomoto.mddlib;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Create comparators for MDDs across Managers.
@@ -108,12 +110,14 @@ class IdenticalComparator implements MDDComparator {
 
 /**
  * Compare MDDs from compatible managers: browse MDDs and check that the nodes are compatible.
+ * Each pair of nodes is compared only once for each call.
  * 
  * @author Aurelien Naldi
  */
 class CompatibleComparator implements MDDComparator {
 		
 	private final MDDManager ddm1, ddm2;
+	private final Set<Long> similarPairs = new HashSet<Long>();
 
 	public CompatibleComparator(MDDManager ddm1, MDDManager ddm2) {
 		this.ddm1 = ddm1;
@@ -121,8 +125,7 @@ class CompatibleComparator implements MDDComparator {
 	}
 
 	/**
-	 * Recursive implementation of the MDD comparison for compatible managers:
-	 * check if two MDDs are identical. It returns true for
+	 * Check if two MDDs are identical. It returns true for
 	 * leaves with the same value, or nodes with the same
 	 * variable and equal children.
 	 * 
@@ -133,12 +136,24 @@ class CompatibleComparator implements MDDComparator {
 	 */
 	@Override
 	public boolean similar( int n1, int n2) {
+		try {
+			return similar_rec(n1, n2);
+		} finally {
+			similarPairs.clear();
+		}
+	}
+
+	/**
+	 * Recursive implementation of the MDD comparison for compatible managers.
+	 * Pairs found to be similar are remembered: any difference interrupts the comparison.
+	 */
+	private boolean similar_rec( int n1, int n2) {
 
 		MDDVariable v1 = ddm1.getNodeVariable(n1);
 		MDDVariable v2 = ddm2.getNodeVariable(n2);
 
 		if (v1 == null) {
-			return v2 == null;
+			return v2 == null && n1 == n2;
 		}
 		
 		if (v2 == null) {
@@ -149,52 +164,60 @@ class CompatibleComparator implements MDDComparator {
 			return false;
 		}
 		
+		Long key = ((long)n1 << 32) | (n2 & 0xffffffffL);
+		if (similarPairs.contains(key)) {
+			return true;
+		}
+
 		for (int i=0 ; i<v1.nbval ; i++) {
 			int c1 = ddm1.getChild(n1, i);
 			int c2 = ddm2.getChild(n2, i);
-			if (!similar(c1, c2)) {
+			if (!similar_rec(c1, c2)) {
 				return false;
 			}
 		}
 
+		similarPairs.add(key);
 		return true;
 	}
 }
 
 /**
- * Compare MDDs from any managers: heavy comparison!
+ * Compare MDDs from any managers: the first MDD is transferred into the second manager,
+ * where the equivalence of the two MDDs is then given by their identity.
+ * <p>
+ * The copy is freed after each comparison, but the second manager is modified during the comparison.
  * 
  * @author Aurelien Naldi
  */
 class HeavyComparator implements MDDComparator {
 	
 	private final MDDManager ddm1, ddm2;
-	private final PathSearcher searcher;
-	private final int[] pathMap;
-	private final byte[] path2;
+	private final int[] indexMap;
+	private final MDDMapper mapper;
 
 	public HeavyComparator(MDDManager ddm1, MDDManager ddm2) {
 		this.ddm1 = ddm1;
 		this.ddm2 = ddm2;
-		this.searcher = new PathSearcher(ddm1);
 		
-		pathMap = new int[ddm1.getAllVariables().length];
-		for (int i=0 ; i<pathMap.length ; i++) {
-			pathMap[i] = -1;
-		}
-		int i=-1;
-		for (MDDVariable v: ddm1.getAllVariables()) {
-			i++;
+		MDDVariable[] variables = ddm1.getAllVariables();
+		indexMap = new int[variables.length];
+		for (MDDVariable v: variables) {
+			int i = ddm1.getVariableIndex(v);
+			indexMap[i] = -1;
 			MDDVariable v2 = ddm2.getVariableForKey(v.key);
 			if (v2 == null || v2.nbval != v.nbval) {
 				continue;
 			}
-			
-			int i2 = ddm2.getVariableIndex(v2);
-			pathMap[i] = i2;
+			indexMap[i] = ddm2.getVariableIndex(v2);
 		}
 		
-		path2 = new byte[ddm2.getAllVariables().length];
+		this.mapper = new MDDMapper(ddm1, ddm2, new IndexMapper() {
+			@Override
+			public int get(int idx) {
+				return indexMap[idx];
+			}
+		});
 	}
 
 	/**
@@ -202,38 +225,21 @@ class HeavyComparator implements MDDComparator {
 	 */
 	@Override
 	public boolean similar(int n1, int n2) {
-		int[] path = searcher.setNode(n1);
-		for (int value: searcher) {
-			byte[] p2 = fillPath(path);
-			if (p2 == null) {
-				return false;
-			}
-			
-			byte v2 = ddm2.groupReach(n2, p2);
-			if (v2 != value) {
-				return false;
-			}
+		if (ddm1.isleaf(n1)) {
+			return n1 == n2;
 		}
 
-		return true;
-	}
-	
-	private byte[] fillPath(int[] p) {
-		for (int i=0 ; i<p.length ; i++) {
-			int v = p[i];
-			int i2 = pathMap[i];
-			
-			if (v < 0 && i2 < 0) {
-				continue;
-			}
-			
-			if (i2 < 0) {
-				return null;
+		// n2 can not depend on a variable which is missing in the second manager
+		boolean[] support = ddm1.collectDecisionVariables(n1);
+		for (int i=0 ; i<support.length ; i++) {
+			if (support[i] && indexMap[i] < 0) {
+				return false;
 			}
-			
-			path2[i2] = (byte)v;
 		}
 		
-		return path2;
+		int mapped = mapper.mapMDD(n1);
+		boolean result = mapped == n2;
+		ddm2.free(mapped);
+		return result;
 	}
 }
@@ -0,0 +1,147 @@
+package org.colomoto.mddlib;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Substitute variables by MDDs (vector composition).
+ * <p>
+ * Given a mapping from variables to MDDs, the composer replaces all these variables at once in
+ * one traversal of the source MDD. For multi-valued variables, the leaves of the replacing MDD
+ * denote the value taken by the variable: they must be lower than its number of values.
+ * <p>
+ * Results are cached for each visited node, so that successive calls on roots sharing some subgraphs
+ * do not perform the same work again. The cache keeps the visited and resulting nodes in use:
+ * call <code>release()</code> when the composer is no longer needed.
+ * The replacing MDDs are not marked as used, they must not be freed before the release.
+ *
+ * @author Aurelien Naldi
+ */
+public class MDDComposer {
+
+	private final MDDManager ddmanager;
+	private final int[] substitutions;
+	private final CaseBuilder cases;
+
+	private final Map<Integer, Integer> cache = new HashMap<Integer, Integer>();
+
+	/**
+	 * Substitute variables in a single MDD.
+	 *
+	 * @param ddmanager		the MDD manager in which the nodes are stored
+	 * @param node			the root of the source MDD
+	 * @param substitutions	the MDD replacing each substituted variable
+	 *
+	 * @return the root of the composed MDD
+	 */
+	public static int compose(MDDManager ddmanager, int node, Map<MDDVariable, Integer> substitutions) {
+		MDDComposer composer = new MDDComposer(ddmanager, substitutions);
+		int result = composer.compose(node);
+		composer.release();
+		return result;
+	}
+
+	/**
+	 * Create a composer for a set of substitutions.
+	 *
+	 * @param ddmanager		the MDD manager in which the nodes are stored
+	 * @param substitutions	the MDD replacing each substituted variable
+	 */
+	public MDDComposer(MDDManager ddmanager, Map<MDDVariable, Integer> substitutions) {
+		this.ddmanager = ddmanager;
+		this.cases = new CaseBuilder(ddmanager);
+
+		int size = 0;
+		for (MDDVariable var: substitutions.keySet()) {
+			if (var.order >= size) {
+				size = var.order+1;
+			}
+		}
+		this.substitutions = new int[size];
+		for (int i=0 ; i<size ; i++) {
+			this.substitutions[i] = -1;
+		}
+		for (Map.Entry<MDDVariable, Integer> e: substitutions.entrySet()) {
+			this.substitutions[e.getKey().order] = e.getValue();
+		}
+	}
+
+	/**
+	 * Apply the substitutions to a MDD.
+	 * The resulting node should be freed when it stopped being used.
+	 *
+	 * @param node	the root of the source MDD
+	 *
+	 * @return the root of the composed MDD
+	 */
+	public int compose(int node) {
+		if (ddmanager.isleaf(node)) {
+			return node;
+		}
+
+		Integer cached = cache.get(node);
+		if (cached != null) {
+			return ddmanager.use(cached);
+		}
+
+		MDDVariable var = ddmanager.getNodeVariable(node);
+		int[] children = new int[var.nbval];
+		int done = 0;
+		int result;
+		try {
+			for ( ; done<children.length ; done++) {
+				children[done] = compose(ddmanager.getChild(node, done));
+			}
+
+			int replacement = getSubstitution(var);
+			if (replacement < 0) {
+				result = cases.branch(var, children);
+			} else {
+				result = cases.select(replacement, children);
+			}
+		} finally {
+			for (int i=0 ; i<done ; i++) {
+				ddmanager.free(children[i]);
+			}
+		}
+
+		// keep the source node in use: its ID can not be recycled while it is cached
+		cache.put(ddmanager.use(node), result);
+		return ddmanager.use(result);
+	}
+
+	/**
+	 * Apply the substitutions to a group of MDDs, sharing the work on common subgraphs.
+	 *
+	 * @param nodes	the roots of the source MDDs
+	 *
+	 * @return the roots of the composed MDDs
+	 */
+	public int[] compose(int[] nodes) {
+		int[] result = new int[nodes.length];
+		for (int i=0 ; i<nodes.length ; i++) {
+			result[i] = compose(nodes[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Release all cached nodes.
+	 * The composer can still be used afterwards, but the previous work will be lost.
+	 */
+	public void release() {
+		for (Map.Entry<Integer, Integer> e: cache.entrySet()) {
+			ddmanager.free(e.getKey());
+			ddmanager.free(e.getValue());
+		}
+		cache.clear();
+		cases.release();
+	}
+
+	private int getSubstitution(MDDVariable var) {
+		if (var.order < substitutions.length) {
+			return substitutions[var.order];
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,22 @@
+package org.colomoto.mddlib;
+
+/**
+ * Exception raised when an operation is interrupted because a MDD store reached one of its limits,
+ * or because the operation was cancelled.
+ * <p>
+ * The interrupted operation releases its partial results before raising it:
+ * the store remains usable, for example to retry with another order of variables.
+ * 
+ * @see MDDManager#setLimits(int, long)
+ * @see CancellationToken
+ * 
+ * @author Aurelien Naldi
+ */
+public class MDDLimitException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public MDDLimitException(String message) {
+		super(message);
+	}
+}
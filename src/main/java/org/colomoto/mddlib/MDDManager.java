@@ -174,10 +174,80 @@ public interface MDDManager {
 	 */
 	NodeRelation getRelation(int first, int other);
 	
+	/**
+	 * Get a structural fingerprint of a MDD.
+	 * The fingerprint is computed from the keys and number of values of the variables and from the leaves.
+	 * It is cached as long as the node exists.
+	 * <p>
+	 * Identical MDDs have the same fingerprint, even if they are stored in different managers,
+	 * or in different runs if the hashcodes of their keys are stable (as for strings).
+	 * Different MDDs have the same fingerprint only in the unlikely case of a 64 bit collision.
+	 * Note that fingerprints depend on the order of variables: the same function will have different
+	 * fingerprints if the relative order of its variables differs.
+	 * 
+	 * @param node
+	 * @return the fingerprint of the MDD rooted at this node
+	 */
+	long getFingerprint(int node);
+
 	/**
 	 * @return the number of non-leaf nodes stored in the manager.
 	 */
 	int getNodeCount();
+
+	/**
+	 * Limit the resources used by the underlying store.
+	 * When creating a new node would exceed one of the limits, a <code>MDDLimitException</code>
+	 * is raised instead. Views of the same store share the same limits.
+	 * 
+	 * @param maxNodes	the maximal number of nodes, 0 for no limit
+	 * @param maxBytes	the maximal memory reserved by the store, in bytes, 0 for no limit
+	 */
+	void setLimits(int maxNodes, long maxBytes);
+
+	/**
+	 * @return the maximal number of nodes in the underlying store, 0 for no limit
+	 */
+	int getMaxNodes();
+
+	/**
+	 * @return the maximal memory reserved by the underlying store, in bytes, 0 for no limit
+	 */
+	long getMaxBytes();
+
+	/**
+	 * @return true if the underlying store is allocated outside of the Java heap
+	 */
+	boolean isOffHeap();
+
+	/**
+	 * Attach a cancellation token to the underlying store.
+	 * Operators check it during their recursion: cancelling it interrupts them with a <code>MDDLimitException</code>.
+	 * 
+	 * @param token	the token, or null to remove it
+	 */
+	void setCancellationToken(CancellationToken token);
+
+	/**
+	 * @return the cancellation token attached to the store, or null if none
+	 */
+	CancellationToken getCancellationToken();
+
+	/**
+	 * Release the memory used by the underlying store.
+	 * This is only needed for stores allocated outside of the Java heap,
+	 * other stores are simply left to the garbage collector.
+	 * Views share the store: closing any of them closes the store, which must not be used afterwards.
+	 */
+	void close();
+
+	/**
+	 * Get statistics on the activity of the underlying store.
+	 * Views of the same store share the same statistics.
+	 * 
+	 * @return a snapshot of the store statistics
+	 */
+	MDDStatistics getStatistics();
 	
 	/**
 	 * Get the number of leaves
@@ -221,6 +291,15 @@ public interface MDDManager {
 	 * @return a boolean array indicating for each variable if it affects the given MDD.
 	 */
 	boolean[] collectDecisionVariables(int node);
+
+	/**
+	 * Collect variables on which a group of MDDs depend, in a single traversal.
+	 * 
+	 * @param nodes		the roots of the MDDs
+	 * @param supports	if not null, it will be filled with the variables affecting each root
+	 * @return a boolean array indicating for each variable if it affects at least one of the given MDDs.
+	 */
+	boolean[] collectDecisionVariables(int[] nodes, boolean[][] supports);
 	
 	/**
 	 * Determine the effect of a given variable on a MDD.
@@ -241,6 +320,23 @@ public interface MDDManager {
 	 * @return the effects of each level switch for this variable
 	 */
 	VariableEffect[] getMultivaluedVariableEffect(MDDVariable var, int node);
+
+	/**
+	 * Determine the effect of all variables on a MDD in a single traversal.
+	 * 
+	 * @param node
+	 * @return the effect of each variable, following the order of <code>getAllVariables()</code>.
+	 *         Variables which do not affect the MDD have no effect.
+	 */
+	VariableEffect[] getVariableEffects(int node);
+
+	/**
+	 * Determine the effects of all variables on a MDD in a single traversal.
+	 * 
+	 * @param node
+	 * @return the effects of each level switch of each variable, following the order of <code>getAllVariables()</code>.
+	 */
+	VariableEffect[][] getMultivaluedVariableEffects(int node);
 	
 	boolean isView(MDDManager ddm);
 
@@ -262,6 +358,30 @@ public interface MDDManager {
      */
     int nodeFromStates(Collection<byte[]> states, int value);
 
+    /**
+     * Create a MDD from a dense table giving the value reached for each assignment of some variables.
+     * <p>
+     * The table is indexed by the mixed-radix encoding of the assignments, the first variable
+     * being the most significant digit: the index of <code>(x0, x1, ..., xn)</code>
+     * is <code>((x0 * nbval1 + x1) * nbval2 + ...) * nbvaln + xn</code>.
+     * The MDD is built in a single bottom-up pass, at linear cost in the size of the table.
+     *
+     * @param variables the variables defining the table, in the order of the encoding
+     * @param table the value of each assignment, which must be a leaf of this manager
+     * @return a MDD giving the value of the table for each state
+     */
+    int nodeFromTable(MDDVariable[] variables, byte[] table);
+
+    /**
+     * Create a MDD from a list of allowed assignments of some variables (a table constraint).
+     *
+     * @param variables the constrained variables
+     * @param tuples the allowed assignments, giving a value for each constrained variable
+     * @param value the value reached by the allowed assignments, 0 being reached by all others
+     * @return a MDD giving the value for the allowed assignments
+     */
+    int nodeFromTuples(MDDVariable[] variables, Collection<byte[]> tuples, int value);
+
     /**
      * Write a raw text representation of the MDD
      *
@@ -3,37 +3,74 @@ package org.colomoto.mddlib;
 import java.util.Collection;
 
 import org.colomoto.mddlib.internal.MDDStoreImpl;
+import org.colomoto.mddlib.internal.SynchronizedMDDStoreImpl;
 
 /**
  * Create MDDManager instances.
  * The creation of a MDDManager requires a list of variables:
  * it can be a standard list of objects, leading to Boolean variables,
  * or rely on a <code>MDDVariableFactory</code> to add multi-valued variables.
+ * <p>
+ * By default, managers are thread-safe: all calls are synchronized (see {@link SynchronizedMDDStoreImpl}
+ * for the concurrency contract). If a manager is only used by a single thread, a store without any
+ * synchronization can be requested to avoid the locking overhead.
  * 
  * @author Aurelien Naldi
  */
 public class MDDManagerFactory {
 
 	/**
-	 * Get a new MDDManager using a MDDVariableFactory.
+	 * Get a new thread-safe MDDManager using a MDDVariableFactory.
 	 * 
 	 * @param vbuilder
 	 * @param nbleaves
 	 * @return a factory, which can include multi-valued variables.
 	 */
 	public static MDDManager getManager(MDDVariableFactory vbuilder, int nbleaves) {
-		return new MDDStoreImpl(vbuilder, nbleaves);
+		return getManager(vbuilder, nbleaves, true);
 	}
 	
 	/**
-	 * Get a new MDDManager using a normal list of variables.
+	 * Get a new thread-safe MDDManager using a normal list of variables.
 	 * 
 	 * @param vbuilder
 	 * @param nbleaves
 	 * @return a factory, with Boolean variables
 	 */
 	public static MDDManager getManager(Collection<?> vbuilder, int nbleaves) {
-		return new MDDStoreImpl(vbuilder, nbleaves);
+		return getManager(vbuilder, nbleaves, true);
+	}
+
+	/**
+	 * Get a new MDDManager, selecting the synchronization mode.
+	 * 
+	 * @param vbuilder		a list of variables, Boolean unless it is a <code>MDDVariableFactory</code>
+	 * @param nbleaves		the number of values that can be reached.
+	 * @param threadSafe	if false, the manager will not be synchronized and must be used by a single thread at a time
+	 * @return a factory using the selected synchronization mode
+	 */
+	public static MDDManager getManager(Collection<?> vbuilder, int nbleaves, boolean threadSafe) {
+		return getManager(vbuilder, nbleaves, threadSafe, false);
+	}
+
+	/**
+	 * Get a new MDDManager, selecting the synchronization mode and the location of the storage.
+	 * <p>
+	 * Off-heap managers keep their nodes and unique table outside of the Java heap, which avoids
+	 * long garbage collections with very large stores. Their memory should be released by calling
+	 * {@link MDDManager#close()} when they are no longer needed.
+	 * 
+	 * @param vbuilder		a list of variables, Boolean unless it is a <code>MDDVariableFactory</code>
+	 * @param nbleaves		the number of values that can be reached.
+	 * @param threadSafe	if false, the manager will not be synchronized and must be used by a single thread at a time
+	 * @param offHeap		if true, the storage is allocated outside of the Java heap
+	 * @return a factory using the selected synchronization mode and storage
+	 */
+	public static MDDManager getManager(Collection<?> vbuilder, int nbleaves, boolean threadSafe, boolean offHeap) {
+		if (threadSafe) {
+			return new SynchronizedMDDStoreImpl(vbuilder, nbleaves, offHeap);
+		}
+		return new MDDStoreImpl(vbuilder, nbleaves, offHeap);
 	}
 
 }
@@ -1,51 +1,105 @@
 package org.colomoto.mddlib;
 
-import org.colomoto.mddlib.operators.MDDBaseOperators;
+import java.util.HashMap;
+import java.util.Map;
 
 
 /***
  * Map Decision diagrams from one manager to another.
+ * <p>
+ * The source MDD is copied node by node, each source node being mapped once.
+ * If the order of the mapped variables differs in the target manager, nodes are rebuilt
+ * using an order-aware composition instead of being created directly.
  *
  */
 public class MDDMapper {
 
     private final MDDManager sourceDDM, targetDDM;
-    private final PathSearcher searcher;
     private final IndexMapper indexMapper;
     private final MDDVariable[] variables;
 
     public MDDMapper(MDDManager sourceDDM, MDDManager targetDDM, IndexMapper indexMapper) {
         this.sourceDDM = sourceDDM;
         this.targetDDM = targetDDM;
-        this.searcher = new PathSearcher(sourceDDM, 1, Integer.MAX_VALUE);
         this.indexMapper = indexMapper;
         this.variables = targetDDM.getAllVariables();
     }
 
+    /**
+     * Copy a MDD into the target manager.
+     *
+     * @param node the root of the MDD in the source manager
+     * @return the root of the copy in the target manager
+     */
     public int mapMDD(int node) {
+        return mapMDD(new int[] {node})[0];
+    }
 
-        int result = 0;
-        int[] path = searcher.setNode(node);
-        for (int value: searcher) {
-
-            int curBranch = 1;
-            for (int i=0 ; i<path.length ; i++) {
-                byte v = (byte)path[i];
-                if (v >= 0) {
-                    int curVar = variables[indexMapper.get(i)].getNodeForValue(v, value);
-                    int nextBranch = MDDBaseOperators.AND.combine(targetDDM, curBranch, curVar);
-                    targetDDM.free(curBranch);
-                    targetDDM.free(curVar);
-                    curBranch = nextBranch;
-                }
+    /**
+     * Copy a group of MDDs into the target manager, sharing the work on their common subgraphs.
+     *
+     * @param nodes the roots of the MDDs in the source manager
+     * @return the roots of the copies in the target manager
+     */
+    public int[] mapMDD(int[] nodes) {
+        Map<Integer, Integer> cache = new HashMap<Integer, Integer>();
+        CaseBuilder cases = new CaseBuilder(targetDDM);
+        int[] result = new int[nodes.length];
+        int done = 0;
+        try {
+            for ( ; done<nodes.length ; done++) {
+                result[done] = targetDDM.use(mapNode(nodes[done], cache, cases));
+            }
+        } catch (MDDLimitException e) {
+            for (int i=0 ; i<done ; i++) {
+                targetDDM.free(result[i]);
             }
+            throw e;
+        } finally {
+            for (int mapped: cache.values()) {
+                targetDDM.free(mapped);
+            }
+            cases.release();
+        }
+        return result;
+    }
+
+    /**
+     * Map a node, the result is owned by the cache.
+     */
+    private int mapNode(int node, Map<Integer, Integer> cache, CaseBuilder cases) {
+        if (sourceDDM.isleaf(node)) {
+            return node;
+        }
 
-            int next = MDDBaseOperators.OVER.combine(targetDDM, result, curBranch);
-            targetDDM.free(curBranch);
-            targetDDM.free(result);
-            result = next;
+        Integer cached = cache.get(node);
+        if (cached != null) {
+            return cached;
         }
 
+        MDDVariable var = sourceDDM.getNodeVariable(node);
+        MDDVariable target = getTargetVariable(var);
+        if (var.nbval > target.nbval) {
+            throw new RuntimeException("Variable "+var+" has more values than its target "+target);
+        }
+
+        // values missing in the source variable lead to 0
+        int[] children = new int[target.nbval];
+        for (int v=0 ; v<var.nbval ; v++) {
+            children[v] = mapNode(sourceDDM.getChild(node, v), cache, cases);
+        }
+
+        // create the node directly if possible, or rely on composition when the order differs
+        int result = cases.branch(target, children);
+        cache.put(node, result);
         return result;
     }
+
+    private MDDVariable getTargetVariable(MDDVariable var) {
+        int idx = indexMapper.get(sourceDDM.getVariableIndex(var));
+        if (idx < 0 || idx >= variables.length) {
+            throw new RuntimeException("No target variable for "+var);
+        }
+        return variables[idx];
+    }
 }
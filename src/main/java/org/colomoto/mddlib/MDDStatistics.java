@@ -0,0 +1,136 @@
+package org.colomoto.mddlib;
+
+/**
+ * Snapshot of the activity of a MDD store.
+ * <p>
+ * Counters are cumulative since the creation of the store. They are maintained
+ * with plain increments in the store, and can be left enabled.
+ *
+ * @author Aurelien Naldi
+ */
+public class MDDStatistics {
+
+	/**
+	 * Number of look-ups in the unique table (requests for nodes with distinct children).
+	 */
+	public final long lookups;
+
+	/**
+	 * Number of look-ups returning an existing node.
+	 */
+	public final long hits;
+
+	/**
+	 * Number of existing nodes compared to the requested one during look-ups.
+	 */
+	public final long probes;
+
+	/**
+	 * Length of the longest collision chain walked during a look-up.
+	 */
+	public final int maxChain;
+
+	/**
+	 * Number of times the unique table was enlarged and rebuilt.
+	 */
+	public final int rehashCount;
+
+	/**
+	 * Total time spent rebuilding the unique table, in nanoseconds.
+	 */
+	public final long rehashTime;
+
+	/**
+	 * Number of times the node storage or the collision chain storage was enlarged.
+	 */
+	public final int extensionCount;
+
+	/**
+	 * Number of nodes created.
+	 */
+	public final long created;
+
+	/**
+	 * Number of nodes freed, i.e. removed when their last reference was released.
+	 */
+	public final long freed;
+
+	/**
+	 * Number of nodes created in the space of a previously freed node.
+	 */
+	public final long recycled;
+
+	/**
+	 * Current number of nodes.
+	 */
+	public final int nodes;
+
+	/**
+	 * Highest number of nodes stored at the same time.
+	 */
+	public final int peakNodes;
+
+	/**
+	 * Memory used by the nodes and reserved for them, in bytes.
+	 */
+	public final long nodeBytes, reservedNodeBytes;
+
+	/**
+	 * Memory used by the unique table and reserved for it, in bytes.
+	 */
+	public final long hashBytes, reservedHashBytes;
+
+	public MDDStatistics(long lookups, long hits, long probes, int maxChain,
+			int rehashCount, long rehashTime, int extensionCount,
+			long created, long freed, long recycled, int nodes, int peakNodes,
+			long nodeBytes, long reservedNodeBytes, long hashBytes, long reservedHashBytes) {
+		this.lookups = lookups;
+		this.hits = hits;
+		this.probes = probes;
+		this.maxChain = maxChain;
+		this.rehashCount = rehashCount;
+		this.rehashTime = rehashTime;
+		this.extensionCount = extensionCount;
+		this.created = created;
+		this.freed = freed;
+		this.recycled = recycled;
+		this.nodes = nodes;
+		this.peakNodes = peakNodes;
+		this.nodeBytes = nodeBytes;
+		this.reservedNodeBytes = reservedNodeBytes;
+		this.hashBytes = hashBytes;
+		this.reservedHashBytes = reservedHashBytes;
+	}
+
+	/**
+	 * @return the average number of nodes compared for each look-up in the unique table
+	 */
+	public double getAverageProbes() {
+		if (lookups == 0) {
+			return 0;
+		}
+		return probes / (double)lookups;
+	}
+
+	/**
+	 * @return the total memory used by the store, in bytes
+	 */
+	public long getUsedBytes() {
+		return nodeBytes + hashBytes;
+	}
+
+	/**
+	 * @return the total memory reserved by the store, in bytes
+	 */
+	public long getReservedBytes() {
+		return reservedNodeBytes + reservedHashBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "nodes: " + nodes + " (peak " + peakNodes + ", created " + created + ", freed " + freed + ", recycled " + recycled + ")\n"
+				+ "unique table: " + lookups + " lookups, " + hits + " hits, " + probes + " probes (max chain " + maxChain + ")\n"
+				+ "resizing: " + rehashCount + " rehash (" + (rehashTime / 1000000) + "ms), " + extensionCount + " extensions\n"
+				+ "memory: " + getUsedBytes() + " bytes used / " + getReservedBytes() + " reserved";
+	}
+}
@@ -0,0 +1,243 @@
+package org.colomoto.mddlib.internal;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import org.colomoto.mddlib.MDDLimitException;
+
+/**
+ * Fixed-size array of integers used by the MDD store for its nodes and unique table.
+ * <p>
+ * The heap version wraps a plain integer array. The direct version keeps its content
+ * outside of the Java heap, where it is ignored by the garbage collector,
+ * and can be released explicitly.
+ * A storage can allocate new storages of the same kind.
+ *
+ * @author Aurelien Naldi
+ */
+abstract class IntStorage {
+
+	/**
+	 * Allocate a storage filled with zeros.
+	 *
+	 * @param length	the number of integers
+	 * @param direct	if true, the storage is allocated outside of the Java heap
+	 * @return a new storage
+	 */
+	static IntStorage allocate(int length, boolean direct) {
+		if (direct) {
+			return new Direct(length);
+		}
+		return new Heap(length);
+	}
+
+	/**
+	 * Get the maximal length of a storage.
+	 *
+	 * @param direct	if true, for a storage allocated outside of the Java heap
+	 * @return the maximal number of integers
+	 */
+	static int maxLength(boolean direct) {
+		if (direct) {
+			return Direct.MAX_LENGTH;
+		}
+		// virtual machines can reserve a few header words in arrays
+		return Integer.MAX_VALUE - 8;
+	}
+
+	/**
+	 * @return the number of integers in this storage
+	 */
+	abstract int length();
+
+	abstract int get(int index);
+
+	abstract void set(int index, int value);
+
+	/**
+	 * Allocate a new storage of the same kind, filled with zeros.
+	 *
+	 * @param length	the number of integers
+	 * @return a new storage
+	 */
+	abstract IntStorage allocate(int length);
+
+	/**
+	 * Copy some values into an integer array.
+	 */
+	void read(int index, int[] dest, int destPos, int length) {
+		for (int i=0 ; i<length ; i++) {
+			dest[destPos+i] = get(index+i);
+		}
+	}
+
+	/**
+	 * Copy some values from an integer array.
+	 */
+	void write(int index, int[] src, int srcPos, int length) {
+		for (int i=0 ; i<length ; i++) {
+			set(index+i, src[srcPos+i]);
+		}
+	}
+
+	/**
+	 * Allocate a larger storage of the same kind, starting with the content of this one.
+	 * This storage is released.
+	 *
+	 * @param length	the length of the new storage
+	 * @return the new storage
+	 */
+	IntStorage extend(int length) {
+		IntStorage extended = allocate(length);
+		for (int i=0 ; i<length() ; i++) {
+			extended.set(i, get(i));
+		}
+		release();
+		return extended;
+	}
+
+	void fill(int value) {
+		for (int i=0 ; i<length() ; i++) {
+			set(i, value);
+		}
+	}
+
+	/**
+	 * Release the memory used by this storage, which must not be used afterwards.
+	 */
+	void release() {
+	}
+
+
+	/**
+	 * Storage in the Java heap.
+	 */
+	static final class Heap extends IntStorage {
+
+		private final int[] data;
+
+		Heap(int length) {
+			this.data = new int[length];
+		}
+
+		@Override
+		int length() {
+			return data.length;
+		}
+
+		@Override
+		int get(int index) {
+			return data[index];
+		}
+
+		@Override
+		void set(int index, int value) {
+			data[index] = value;
+		}
+
+		@Override
+		IntStorage allocate(int length) {
+			return new Heap(length);
+		}
+
+		@Override
+		void read(int index, int[] dest, int destPos, int length) {
+			System.arraycopy(data, index, dest, destPos, length);
+		}
+
+		@Override
+		void write(int index, int[] src, int srcPos, int length) {
+			System.arraycopy(src, srcPos, data, index, length);
+		}
+
+		@Override
+		IntStorage extend(int length) {
+			Heap extended = new Heap(length);
+			System.arraycopy(data, 0, extended.data, 0, data.length);
+			return extended;
+		}
+	}
+
+
+	/**
+	 * Storage in a direct buffer, outside of the Java heap.
+	 * <p>
+	 * On Java 9 and later, the memory is freed as soon as the storage is released.
+	 * Otherwise it is freed when the buffer is collected.
+	 */
+	static final class Direct extends IntStorage {
+
+		// the buffer is indexed by bytes
+		static final int MAX_LENGTH = Integer.MAX_VALUE / 4;
+
+		private static final Object UNSAFE;
+		private static final Method INVOKE_CLEANER;
+
+		static {
+			Object unsafe = null;
+			Method invokeCleaner = null;
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field field = unsafeClass.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				unsafe = field.get(null);
+			} catch (Exception e) {
+				// not available before Java 9: rely on the garbage collector
+				invokeCleaner = null;
+			}
+			UNSAFE = unsafe;
+			INVOKE_CLEANER = invokeCleaner;
+		}
+
+		private ByteBuffer buffer;
+		private IntBuffer data;
+		private final int length;
+
+		Direct(int length) {
+			if (length > MAX_LENGTH) {
+				throw new MDDLimitException("Direct storage is limited to "+MAX_LENGTH+" integers");
+			}
+			this.length = length;
+			this.buffer = ByteBuffer.allocateDirect(4*length).order(ByteOrder.nativeOrder());
+			this.data = buffer.asIntBuffer();
+		}
+
+		@Override
+		int length() {
+			return length;
+		}
+
+		@Override
+		int get(int index) {
+			return data.get(index);
+		}
+
+		@Override
+		void set(int index, int value) {
+			data.put(index, value);
+		}
+
+		@Override
+		IntStorage allocate(int length) {
+			return new Direct(length);
+		}
+
+		@Override
+		void release() {
+			ByteBuffer released = buffer;
+			buffer = null;
+			data = null;
+			if (released != null && INVOKE_CLEANER != null) {
+				try {
+					INVOKE_CLEANER.invoke(UNSAFE, released);
+				} catch (Exception e) {
+					// leave it to the garbage collector
+				}
+			}
+		}
+	}
+}
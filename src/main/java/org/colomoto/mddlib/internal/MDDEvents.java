@@ -0,0 +1,93 @@
+package org.colomoto.mddlib.internal;
+
+/**
+ * Emit monitoring events on the activity of MDD stores and operators.
+ * <p>
+ * On Java 11 and later, a multi-release version of this class emits Java Flight Recorder events.
+ * This default version is used on older runtimes and does nothing.
+ * <p>
+ * Callers should check <code>isEnabled()</code> before measuring anything: it stays false
+ * unless a recording is running, making the monitoring free otherwise.
+ * Methods starting an event return an opaque object, which is null if no event is recorded,
+ * and must be given back when the event ends.
+ *
+ * @author Aurelien Naldi
+ */
+public class MDDEvents {
+
+	private MDDEvents() {
+		// no instance of this class
+	}
+
+	/**
+	 * @return true if events should be emitted
+	 */
+	public static boolean isEnabled() {
+		return false;
+	}
+
+	/**
+	 * A storage array was enlarged.
+	 *
+	 * @param table		the name of the enlarged array
+	 * @param oldSize	the previous size of the array
+	 * @param newSize	the new size of the array
+	 */
+	public static void tableGrowth(String table, int oldSize, int newSize) {
+	}
+
+	/**
+	 * Start rebuilding the unique table.
+	 *
+	 * @return the started event
+	 */
+	public static Object beginRehash() {
+		return null;
+	}
+
+	/**
+	 * The unique table was rebuilt.
+	 *
+	 * @param event		the event returned by <code>beginRehash()</code>
+	 * @param size		the new size of the table
+	 * @param nodes		the number of nodes placed in the table
+	 */
+	public static void endRehash(Object event, int size, int nodes) {
+	}
+
+	/**
+	 * Start releasing a node.
+	 *
+	 * @return the started event
+	 */
+	public static Object beginSweep() {
+		return null;
+	}
+
+	/**
+	 * A node was released, removing the nodes which were no longer used.
+	 *
+	 * @param event		the event returned by <code>beginSweep()</code>
+	 * @param removed	the number of removed nodes
+	 */
+	public static void endSweep(Object event, long removed) {
+	}
+
+	/**
+	 * Start an operation.
+	 *
+	 * @return the started event
+	 */
+	public static Object beginOperation() {
+		return null;
+	}
+
+	/**
+	 * An operation was performed.
+	 *
+	 * @param event		the event returned by <code>beginOperation()</code>
+	 * @param operator	the name of the operator
+	 */
+	public static void endOperation(Object event, String operator) {
+	}
+}
@@ -2,12 +2,17 @@ package org.colomoto.mddlib.internal;
 
 import java.text.ParseException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.colomoto.mddlib.CancellationToken;
 import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.MDDStatistics;
 import org.colomoto.mddlib.MDDVariable;
 import org.colomoto.mddlib.NodeRelation;
 import org.colomoto.mddlib.VariableEffect;
+import org.colomoto.mddlib.operators.BalancedReduction;
 import org.colomoto.mddlib.operators.MDDBaseOperators;
 
 /**
@@ -23,6 +28,7 @@ public class MDDManagerProxy implements MDDManager {
 	private final MDDStore store;
 	private int[] store2custom, custom2store;
 	private MDDVariable[] variables;
+	private final Map<Object, MDDVariable> key2variable = new HashMap<Object, MDDVariable>();
 	
 	
 	public static MDDManager getProxy(MDDStore store, List<?> customOrder) {
@@ -74,6 +80,7 @@ public class MDDManagerProxy implements MDDManager {
 		int i=0;
 		for (int j: custom2store) {
 			variables[i] = storeVars[j];
+			key2variable.putIfAbsent(variables[i].key, variables[i]);
 			i++;
 		}
 	}
@@ -90,13 +97,8 @@ public class MDDManagerProxy implements MDDManager {
 
 	@Override
 	public MDDVariable getVariableForKey(Object key) {
-		MDDVariable var = store.getVariableForKey(key);
-		int idx = store2custom[var.order];
-		if (idx < 0) {
-			// this variable is not is the custom order
-			return null;
-		}
-		return var;
+		// only variables in the custom order are indexed
+		return key2variable.get(key);
 	}
 
 
@@ -107,15 +109,32 @@ public class MDDManagerProxy implements MDDManager {
 
     @Override
     public int nodeFromStates(Collection<byte[]> states, int value) {
-        int node = 0;
-        for (byte[] state: states) {
-            int newNode = nodeFromState(state, value);
-            int nextNode = MDDBaseOperators.OR.combine(this, node, newNode);
-            free(newNode);
-            free(node);
-            node = nextNode;
+        if (states.isEmpty()) {
+            return 0;
+        }
+        int[] nodes = new int[states.size()];
+        int done = 0;
+        try {
+            for (byte[] state: states) {
+                nodes[done] = nodeFromState(state, value);
+                done++;
+            }
+            return BalancedReduction.reduce(this, MDDBaseOperators.OR, nodes);
+        } finally {
+            for (int i=0 ; i<done ; i++) {
+                free(nodes[i]);
+            }
         }
-        return node;
+    }
+
+    @Override
+    public int nodeFromTable(MDDVariable[] variables, byte[] table) {
+        return store.nodeFromTable(variables, table);
+    }
+
+    @Override
+    public int nodeFromTuples(MDDVariable[] variables, Collection<byte[]> tuples, int value) {
+        return store.nodeFromTuples(variables, tuples, value);
     }
 
     @Override
@@ -137,6 +156,7 @@ public class MDDManagerProxy implements MDDManager {
 			System.arraycopy(variables, 0, extended, 0, variables.length);
 			extended[variables.length] = inStore;
 			this.variables = extended;
+			key2variable.put(inStore.key, inStore);
 			
 			custom2store = extendmapping(custom2store, variables.length);
 			store2custom = extendmapping(store2custom, variables.length);
@@ -208,6 +228,51 @@ public class MDDManagerProxy implements MDDManager {
 		return store.getRelation(first, other);
 	}
 
+	@Override
+	public long getFingerprint(int node) {
+		return store.getFingerprint(node);
+	}
+
+	@Override
+	public MDDStatistics getStatistics() {
+		return store.getStatistics();
+	}
+
+	@Override
+	public void setLimits(int maxNodes, long maxBytes) {
+		store.setLimits(maxNodes, maxBytes);
+	}
+
+	@Override
+	public int getMaxNodes() {
+		return store.getMaxNodes();
+	}
+
+	@Override
+	public long getMaxBytes() {
+		return store.getMaxBytes();
+	}
+
+	@Override
+	public boolean isOffHeap() {
+		return store.isOffHeap();
+	}
+
+	@Override
+	public void setCancellationToken(CancellationToken token) {
+		store.setCancellationToken(token);
+	}
+
+	@Override
+	public CancellationToken getCancellationToken() {
+		return store.getCancellationToken();
+	}
+
+	@Override
+	public void close() {
+		store.close();
+	}
+
 	@Override
 	public int getNodeCount() {
 		return store.getNodeCount();
@@ -225,7 +290,25 @@ public class MDDManagerProxy implements MDDManager {
 
 	@Override
 	public boolean[] collectDecisionVariables(int node) {
-		boolean[] inStore = store.collectDecisionVariables(node);
+		return toCustomOrder(store.collectDecisionVariables(node));
+	}
+
+	@Override
+	public boolean[] collectDecisionVariables(int[] nodes, boolean[][] supports) {
+		boolean[][] inStoreSupports = null;
+		if (supports != null) {
+			inStoreSupports = new boolean[nodes.length][];
+		}
+		boolean[] inStore = store.collectDecisionVariables(nodes, inStoreSupports);
+		if (supports != null) {
+			for (int i=0 ; i<nodes.length ; i++) {
+				supports[i] = toCustomOrder(inStoreSupports[i]);
+			}
+		}
+		return toCustomOrder(inStore);
+	}
+
+	private boolean[] toCustomOrder(boolean[] inStore) {
 		boolean[] ret = new boolean[variables.length];
 		for (int i=0 ; i<ret.length ; i++) {
 			ret[i] = inStore[ custom2store[i] ];
@@ -243,6 +326,26 @@ public class MDDManagerProxy implements MDDManager {
 		return store.getMultivaluedVariableEffect(var, node);
 	}
 
+	@Override
+	public VariableEffect[] getVariableEffects(int node) {
+		VariableEffect[] inStore = store.getVariableEffects(node);
+		VariableEffect[] ret = new VariableEffect[variables.length];
+		for (int i=0 ; i<ret.length ; i++) {
+			ret[i] = inStore[ custom2store[i] ];
+		}
+		return ret;
+	}
+
+	@Override
+	public VariableEffect[][] getMultivaluedVariableEffects(int node) {
+		VariableEffect[][] inStore = store.getMultivaluedVariableEffects(node);
+		VariableEffect[][] ret = new VariableEffect[variables.length][];
+		for (int i=0 ; i<ret.length ; i++) {
+			ret[i] = inStore[ custom2store[i] ];
+		}
+		return ret;
+	}
+
 	@Override
 	public boolean isView(MDDManager ddm) {
 		if (store == ddm) {
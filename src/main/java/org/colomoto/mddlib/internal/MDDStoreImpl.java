@@ -1,16 +1,24 @@
 package org.colomoto.mddlib.internal;
 
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
+import org.colomoto.mddlib.CancellationToken;
+import org.colomoto.mddlib.MDDLimitException;
 import org.colomoto.mddlib.MDDManager;
 import org.colomoto.mddlib.MDDManagerFactory;
+import org.colomoto.mddlib.MDDStatistics;
 import org.colomoto.mddlib.MDDVariable;
 import org.colomoto.mddlib.MDDVariableFactory;
 import org.colomoto.mddlib.NodeRelation;
 import org.colomoto.mddlib.VariableEffect;
+import org.colomoto.mddlib.operators.BalancedReduction;
 import org.colomoto.mddlib.operators.MDDBaseOperators;
 
 /**
@@ -18,13 +26,27 @@ import org.colomoto.mddlib.operators.MDDBaseOperators;
  * <p>
  * The number of leaves is defined upon creation and can not be changed.
  * <p>
- * MDDs are stored in a large integer array, divided into blocs.
+ * MDDs are stored in integer arrays, divided into blocs.
  * Each bloc denotes a MDD node, providing its level and list of children,
  * as well as the reference counter.
  * To avoid duplication, a hashmap allows to find existing nodes quickly.
- * New nodes are added by extending the storage array, but blocs can also
+ * New nodes are added at the end of the storage, but blocs can also
  * be freed when unused. A chained list allows to reuse these free blocs.
  * <p>
+ * The storage is split into segments holding a fixed number of nodes: a node ID
+ * gives the segment and the position of its bloc in this segment.
+ * Only the first segment grows by copy, additional segments are allocated when needed
+ * and never moved, allowing the store to hold more nodes than a single array could.
+ * The arrays of the unique table are not segmented: when they could not hold a new node
+ * within the maximal size of an array, the store refuses it with a {@link MDDLimitException}.
+ * <p>
+ * The segments and the unique table can be allocated outside of the Java heap,
+ * where they are ignored by the garbage collector. This memory is released
+ * when the store is closed.
+ * <p>
+ * This implementation is not synchronized: it must be used from a single thread at a time.
+ * Use {@link SynchronizedMDDStoreImpl} to share a store between threads.
+ * <p>
  * @see MDDManager for further details.
  * 
  * @author Aurelien Naldi
@@ -35,6 +57,12 @@ public class MDDStoreImpl implements MDDStore {
 	private static final int DEFAULT_HASHITEMS = 20;
 
 	private static final int FILL_LIMIT = 80;
+	private static final int MIGRATION_STEP = 4;
+
+	// number of nodes in a full storage segment
+	private static final int SEGMENT_BITS = 14;
+	private static final int SEGMENT_NODES = 1 << SEGMENT_BITS;
+	private static final int SEGMENT_MASK = SEGMENT_NODES - 1;
 	
 	private static final int INC_COUNT = 1;
 	private static final int INC_VALUES = 2;
@@ -47,24 +75,56 @@ public class MDDStoreImpl implements MDDStore {
 	
 	
 	protected MDDVariable[] variables;
+	private final Map<Object, MDDVariable> key2variable = new HashMap<Object, MDDVariable>();
 
 	private int blocsize;
 
-	private int[] hashcodes;
-	private int[] hashitems;
-	private int[] blocs;
+	private IntStorage hashcodes;
+
+	// previous hashtable during an incremental rehash, and number of its cells already migrated
+	private IntStorage oldHashcodes = null;
+	private int migrated = 0;
+	private Object rehashEvent = null;
+	private IntStorage hashitems;
+	// maximal number of cells in the arrays of the unique table
+	private final int maxHashCells;
+	private final boolean offHeap;
+
+	// storage segments and number of segments in use
+	private IntStorage[] segments;
+	private int nbsegments = 0;
 	
 	// starting point for free blocs/item chained lists
 	private int freeBloc = -1;
 	private int freeItem = -1;
 
-	// first free position at the end of data/hash-items arrays
+	// first free position at the end of the hash-items array, first node never used
 	private int lastitem = 0;
 	private int lastbloc = 0;
 
 	private int nbnodes = 0;
 	private final int nbleaves;
 
+	// traversal marks: a node is visited in the current traversal if its mark is the current epoch
+	private int[][] marks = new int[1][];
+	private int epoch = 0;
+
+	// cached fingerprints, 0 if not yet computed
+	private long[][] fingerprints = new long[1][];
+
+	// statistics
+	private long lookups = 0, hits = 0, probes = 0;
+	private int maxChain = 0;
+	private int rehashCount = 0, extensionCount = 0;
+	private long rehashTime = 0;
+	private long created = 0, freed = 0, recycled = 0;
+	private int peakNodes = 0;
+
+	// resource limits (0 for none) and cancellation
+	private int maxNodes = 0;
+	private long maxBytes = 0;
+	private volatile CancellationToken cancellationToken = null;
+
 	/**
 	 * Create a new MDDStore using the default capacity.
 	 * Note that this constructor should be called through {@link MDDManagerFactory}, not directly.
@@ -73,7 +133,31 @@ public class MDDStoreImpl implements MDDStore {
 	 * @param nbleaves	the number of values that can be reached.
 	 */
 	public MDDStoreImpl(Collection<?> keys, int nbleaves) {
-		this(DEFAULT_CAPACITY, keys, nbleaves);
+		this(DEFAULT_CAPACITY, keys, nbleaves, false, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Create a new MDDStore using the default capacity, selecting the location of the storage.
+	 * Note that this constructor should be called through {@link MDDManagerFactory}, not directly.
+	 * 
+	 * @param keys		the list of variables that can be used.
+	 * @param nbleaves	the number of values that can be reached.
+	 * @param offHeap	if true, nodes and the unique table are stored outside of the Java heap.
+	 */
+	public MDDStoreImpl(Collection<?> keys, int nbleaves, boolean offHeap) {
+		this(DEFAULT_CAPACITY, keys, nbleaves, offHeap, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Create a new MDDStore with a smaller bound on the size of the unique table.
+	 * 
+	 * @param keys			the list of variables that can be used.
+	 * @param nbleaves		the number of values that can be reached.
+	 * @param offHeap		if true, nodes and the unique table are stored outside of the Java heap.
+	 * @param maxHashCells	the maximal number of cells in each array of the unique table.
+	 */
+	MDDStoreImpl(Collection<?> keys, int nbleaves, boolean offHeap, int maxHashCells) {
+		this(DEFAULT_CAPACITY, keys, nbleaves, offHeap, maxHashCells);
 	}
 
 	/**
@@ -82,13 +166,18 @@ public class MDDStoreImpl implements MDDStore {
 	 * @param capacity		number of nodes that can be stored in the initially reserved space.
 	 * @param keys		    the list of variables that can be used.
 	 * @param nbleaves		the number of values that can be reached.
+	 * @param offHeap		if true, nodes and the unique table are stored outside of the Java heap.
+	 * @param maxHashCells	the maximal number of cells in each array of the unique table.
 	 */
-	private MDDStoreImpl(int capacity, Collection<?> keys, int nbleaves) {
+	private MDDStoreImpl(int capacity, Collection<?> keys, int nbleaves, boolean offHeap, int maxHashCells) {
 		if (keys instanceof MDDVariableFactory) {
 			this.variables = getVariables((MDDVariableFactory)keys);
 		} else {
 			this.variables = getBooleanVariables(keys);
 		}
+		for (MDDVariable var: variables) {
+			key2variable.putIfAbsent(var.key, var);
+		}
 		
 		this.nbleaves = nbleaves;
 		blocsize = 2;
@@ -99,15 +188,44 @@ public class MDDStoreImpl implements MDDStore {
 		}
 		blocsize += INC_VALUES;  // add INC_VALUES cells in the bloc for metadata (type, usage count)
 		
-		hashcodes = new int[capacity*2];
-		hashitems = new int[DEFAULT_HASHITEMS];
+		this.offHeap = offHeap;
+		// the hashtable stores pairs of cells
+		this.maxHashCells = Math.max(2, Math.min(maxHashCells, IntStorage.maxLength(offHeap)) & ~1);
+		hashcodes = IntStorage.allocate(Math.min(capacity*2, this.maxHashCells), offHeap);
+		hashitems = hashcodes.allocate(Math.min(DEFAULT_HASHITEMS, this.maxHashCells));
 		reset_hash();
 
 		lastbloc = nbleaves;
-		blocs = new int[nbleaves + capacity*blocsize];
-		for (int i=0 ; i<nbleaves ; i++) {
-			blocs[i] = i;
+		segments = new IntStorage[4];
+		segments[0] = hashcodes.allocate(Math.min(capacity, SEGMENT_NODES)*blocsize);
+		nbsegments = 1;
+	}
+
+	@Override
+	public void close() {
+		if (segments == null) {
+			return;
 		}
+		for (int s=0 ; s<nbsegments ; s++) {
+			segments[s].release();
+		}
+		if (oldHashcodes != null) {
+			// the pending rehash ends with the store
+			MDDEvents.endRehash(rehashEvent, hashcodes.length(), nbnodes);
+			rehashEvent = null;
+			oldHashcodes.release();
+		}
+		hashcodes.release();
+		hashitems.release();
+		// any further use fails instead of reaching released memory
+		segments = null;
+		hashcodes = null;
+		oldHashcodes = null;
+		hashitems = null;
+		marks = null;
+		fingerprints = null;
+		nbsegments = 0;
+		nbnodes = 0;
 	}
 
 	@Override
@@ -164,14 +282,7 @@ public class MDDStoreImpl implements MDDStore {
 
 	@Override
 	public MDDVariable getVariableForKey(Object key) {
-		// TODO: make getVariableID faster if needed
-		//MDDVariable var = m_key2variable.get(o);
-		for (MDDVariable var: variables) {
-			if ( key.equals(var.key) ) {
-				return var;
-			}
-		}
-		return null;
+		return key2variable.get(key);
 	}
 
 	@Override
@@ -184,6 +295,7 @@ public class MDDStoreImpl implements MDDStore {
 			System.arraycopy(variables, 0, extended, 0, variables.length);
 			extended[variables.length] = var;
 			variables = extended;
+			key2variable.put(key, var);
 		} else if (var.nbval < nbval) {
 			throw new RuntimeException("changing the number of values of a component is not supported");
 		}
@@ -197,57 +309,64 @@ public class MDDStoreImpl implements MDDStore {
 	}
 
 	@Override
-	public synchronized int getNode(int var, int lchild, int rchild) {
+	public int getNode(int var, int lchild, int rchild) {
 		if (lchild == rchild) {
 			return use(lchild);
 		}
-		if ((!isleaf(lchild) && blocs[lchild] <= var) || (!isleaf(rchild) && blocs[rchild] <= var)) {
+		if ((!isleaf(lchild) && getLevel(lchild) <= var) || (!isleaf(rchild) && getLevel(rchild) <= var)) {
 			System.err.println("Invalid request");
 			return -1;
 		}
-		int hash = compute_bhash(var, lchild, rchild);
-		boolean hashexists = hashcodes[hash] != -1;
+		migrate_step();
+		int raw = compute_bhash(var, lchild, rchild);
+		IntStorage table = getTable(raw);
+		int hash = bucket(raw, table);
+		boolean hashexists = table.get(hash) != -1;
+		lookups++;
 		if (hashexists) {
-			int pos = hashcodes[hash];
+			int pos = table.get(hash);
+			int chain = 1;
 			if (is_equal(pos, var, lchild, rchild)) {
+				probed(chain, true);
 				return use(pos);
 			}
-			int item = hashcodes[hash+1];
+			int item = table.get(hash+1);
 			while (item != -1) {
-				pos = hashitems[item];
+				pos = hashitems.get(item);
+				chain++;
 				if (is_equal(pos, var, lchild, rchild)) {
+					probed(chain, true);
 					return use(pos);
 				}
-				item = hashitems[item+1];
+				item = hashitems.get(item+1);
 			}
+			probed(chain, false);
 		}
 		
 		// node not found, create it
+		checkLimits();
+		if (prepare_hash()) {
+			// the hashtable was replaced
+			table = getTable(raw);
+			hash = bucket(raw, table);
+		}
 		int pos = get_free_bloc();
-		blocs[pos] = var;
-		blocs[pos+INC_COUNT] = 0; 	   // reset usage count
-		blocs[pos+INC_VALUES] = lchild;
-		blocs[pos+INC_VALUES+1] = rchild;
+		IntStorage segment = segment(pos);
+		int offset = offset(pos);
+		segment.set(offset, var);
+		segment.set(offset+INC_COUNT, 0); 	   // reset usage count
+		segment.set(offset+INC_VALUES, lchild);
+		segment.set(offset+INC_VALUES+1, rchild);
 		
 		// increase usage of the children
 		use(lchild);
 		use(rchild);
-		nbnodes++;
+		created();
 
-		if ( (100*nbnodes)/hashcodes.length > FILL_LIMIT) {
-			extend_hash();
-		} else {
-			place_hash(pos, hash);
-		}
+		place_hash(table, pos, hash);
 		return use(pos);
 	}
 
-	private int getNodeFree(int var, int f, int t) {
-		int ret = getNode(var, f, t);
-		free(f);
-		free(t);
-		return ret;
-	}
 	
 	private int getNodeFree(int var, int[] children) {
 		int ret = getNode(var, children);
@@ -268,7 +387,7 @@ public class MDDStoreImpl implements MDDStore {
 				break;
 			}
 			
-			if (!isleaf(c) && blocs[c] <= var) {
+			if (!isleaf(c) && getLevel(c) <= var) {
 				System.err.println("Invalid node request!");
 				return -1;
 			}
@@ -277,92 +396,255 @@ public class MDDStoreImpl implements MDDStore {
 			return use(child);
 		}
 		
-		int hash = compute_mhash(var, children);
-		boolean hashexists = hashcodes[hash] != -1;
+		migrate_step();
+		int raw = compute_mhash(var, children);
+		IntStorage table = getTable(raw);
+		int hash = bucket(raw, table);
+		boolean hashexists = table.get(hash) != -1;
+		lookups++;
 		if (hashexists) {
-			int pos = hashcodes[hash];
+			int pos = table.get(hash);
+			int chain = 1;
 			if (is_equal(pos, var, children)) {
+				probed(chain, true);
 				return use(pos);
 			}
-			int item = hashcodes[hash+1];
+			int item = table.get(hash+1);
 			while (item != -1) {
-				pos = hashitems[item];
+				pos = hashitems.get(item);
+				chain++;
 				if (is_equal(pos, var, children)) {
+					probed(chain, true);
 					return use(pos);
 				}
-				item = hashitems[item+1];
+				item = hashitems.get(item+1);
 			}
+			probed(chain, false);
 		}
 		
 		// node not found, create it
+		checkLimits();
+		if (prepare_hash()) {
+			// the hashtable was replaced
+			table = getTable(raw);
+			hash = bucket(raw, table);
+		}
 		int pos = get_free_bloc();
-		blocs[pos] = var;
-		blocs[pos+INC_COUNT] = 0; 	   // reset usage count
-		System.arraycopy(children, 0, blocs, pos+INC_VALUES, children.length);
+		IntStorage segment = segment(pos);
+		int offset = offset(pos);
+		segment.set(offset, var);
+		segment.set(offset+INC_COUNT, 0); 	   // reset usage count
+		segment.write(offset+INC_VALUES, children, 0, children.length);
 		
 		for (int c: children) {
 			use(c);
 		}
 		
-		nbnodes++;
+		created();
 		
-		if ( (100*nbnodes)/hashcodes.length > FILL_LIMIT) {
-			extend_hash();
-		} else {
-			place_hash(pos, hash);
-		}
+		place_hash(table, pos, hash);
 		return use(pos);
 	}
 
+	/**
+	 * Record the end of a look-up in the unique table.
+	 * 
+	 * @param chain	number of nodes compared during the look-up
+	 * @param found	true if an existing node was found
+	 */
+	private void probed(int chain, boolean found) {
+		probes += chain;
+		if (chain > maxChain) {
+			maxChain = chain;
+		}
+		if (found) {
+			hits++;
+		}
+	}
+
+	@Override
+	public void setLimits(int maxNodes, long maxBytes) {
+		this.maxNodes = maxNodes;
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	@Override
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	@Override
+	public void setCancellationToken(CancellationToken token) {
+		this.cancellationToken = token;
+	}
+
+	@Override
+	public CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+
+	/**
+	 * Check that a new node can be created without exceeding the limits.
+	 * This must be called before modifying the store.
+	 */
+	private void checkLimits() {
+		if (maxNodes > 0 && nbnodes >= maxNodes) {
+			throw new MDDLimitException("Node limit reached: "+maxNodes);
+		}
+		// each node uses at most one item (two cells) in the collision lists
+		if (2L*(nbnodes+1) > maxHashCells) {
+			throw new MDDLimitException("Unique table limit reached: "+nbnodes+" nodes");
+		}
+		if (maxBytes > 0) {
+			// anticipate the growth of the storage and hash arrays
+			long reserved = 4L * getStorageSize() + 4L * hashcodes.length() + 4L * hashitems.length();
+			if (oldHashcodes != null) {
+				reserved += 4L * oldHashcodes.length();
+			}
+			if (freeBloc < 0 && lastbloc - nbleaves >= getCapacity()) {
+				IntStorage last = segments[nbsegments-1];
+				reserved += 4L * (last.length() < SEGMENT_NODES*blocsize ? last.length() : SEGMENT_NODES*blocsize);
+			}
+			if ( (100L*(nbnodes+1))/hashcodes.length() > FILL_LIMIT && hashcodes.length() < maxHashCells) {
+				reserved += 4L * hashcodes.length();
+			}
+			if (reserved > maxBytes) {
+				throw new MDDLimitException("Memory limit reached: "+maxBytes+" bytes");
+			}
+		}
+	}
+
+	/**
+	 * Record the creation of a node.
+	 */
+	private void created() {
+		nbnodes++;
+		created++;
+		if (nbnodes > peakNodes) {
+			peakNodes = nbnodes;
+		}
+	}
+
+	@Override
+	public MDDStatistics getStatistics() {
+		long nodeBytes = 4L * blocsize * nbnodes;
+		long reservedNodeBytes = 4L * getStorageSize();
+		for (int s=0 ; s<nbsegments ; s++) {
+			if (s < marks.length && marks[s] != null) {
+				reservedNodeBytes += 4L * marks[s].length;
+			}
+			if (s < fingerprints.length && fingerprints[s] != null) {
+				reservedNodeBytes += 8L * fingerprints[s].length;
+			}
+		}
+		// each node is referenced by a pair of integers in the main hashtable or in the collision chains
+		long hashBytes = 8L * nbnodes;
+		long reservedHashBytes = 4L * hashcodes.length() + 4L * hashitems.length();
+		if (oldHashcodes != null) {
+			reservedHashBytes += 4L * oldHashcodes.length();
+		}
+		return new MDDStatistics(lookups, hits, probes, maxChain, rehashCount, rehashTime, extensionCount,
+				created, freed, recycled, nbnodes, peakNodes, nodeBytes, reservedNodeBytes, hashBytes, reservedHashBytes);
+	}
+
 	/* ******************** USAGE COUNT ***************************** */
 	
 	@Override
-	public synchronized int use(int node) {
+	public int use(int node) {
 		if (!isleaf(node)) {
-			blocs[node+INC_COUNT]++;
+			IntStorage segment = segment(node);
+			int offset = offset(node);
+			segment.set(offset+INC_COUNT, segment.get(offset+INC_COUNT)+1);
 		}
 		return node;
 	}
 
 	@Override
-	public synchronized void free(int pos) {
+	public void free(int pos) {
 		if (!CANFREE) {
 			return;
 		}
+		if (!MDDEvents.isEnabled()) {
+			release(pos);
+			return;
+		}
+		long before = freed;
+		Object event = MDDEvents.beginSweep();
+		release(pos);
+		MDDEvents.endSweep(event, freed - before);
+	}
+
+	/**
+	 * Release a reference on a node, removing it if it is no longer used.
+	 * 
+	 * @param pos
+	 */
+	private void release(int pos) {
 		if (isleaf(pos)) {
 			return;
 		}
 		
-		if (blocs[pos+INC_COUNT] > 1) {
-			blocs[pos+INC_COUNT]--;
+		IntStorage segment = segment(pos);
+		int offset = offset(pos);
+		if (segment.get(offset+INC_COUNT) > 1) {
+			segment.set(offset+INC_COUNT, segment.get(offset+INC_COUNT)-1);
 			return;
 		}
+		remove(pos);
+	}
 
-		if (blocs[pos] < 0) {
+	/**
+	 * Remove a node which is no longer used, and release its children.
+	 * 
+	 * @param pos
+	 */
+	private void remove(int pos) {
+
+		IntStorage segment = segment(pos);
+		int offset = offset(pos);
+		if (segment.get(offset) < 0) {
 			System.err.println("re-free bloc: "+pos);
 			return;
 		}
 
-		int var = blocs[pos];
+		int var = segment.get(offset);
 		int nbval = variables[var].nbval;
 		
 		// remove it from the hash
 		freeHash(pos, var, nbval);
 
 		// clear the data and set the bloc as free
-		blocs[pos] = -1;
-		if (lastbloc == pos+blocsize) {
+		segment.set(offset, -1);
+		if (lastbloc == pos+1) {
 			lastbloc = pos;
 		} else {
-			blocs[pos+1] = freeBloc;
+			segment.set(offset+INC_COUNT, freeBloc);
 			freeBloc = pos;
 		}
+		// forget the fingerprint
+		int s = (pos - nbleaves) >>> SEGMENT_BITS;
+		int idx = (pos - nbleaves) & SEGMENT_MASK;
+		if (s < fingerprints.length && fingerprints[s] != null && idx < fingerprints[s].length) {
+			fingerprints[s][idx] = 0;
+		}
+
 		// free the children
 		for (int i=0 ; i<nbval ; i++) {
-			free(blocs[pos+INC_VALUES+i]);
-			blocs[pos+INC_VALUES+i] = 0;
+			release(segment.get(offset+INC_VALUES+i));
+			segment.set(offset+INC_VALUES+i, 0);
 		}
 		nbnodes--;
+		freed++;
 	}
 	
 	/**
@@ -379,45 +661,36 @@ public class MDDStoreImpl implements MDDStore {
 		}
 		
 		// compute the hash
-		int hash;
-		if (nbval == 2) {
-			hash = compute_bhash(var, blocs[pos+INC_VALUES], blocs[pos+INC_VALUES+1]);
-		} else {
-			int[] children = new int[variables[var].nbval];
-			System.arraycopy(blocs, pos+INC_VALUES, children, 0, children.length);
-			hash = compute_mhash(var, children);
-		}
+		int raw = bloc_hash(pos);
+		IntStorage table = getTable(raw);
+		int hash = bucket(raw, table);
 
-		int hpos = hashcodes[hash];
-		int itemPos = hashcodes[hash+1];
+		int hpos = table.get(hash);
+		int itemPos = table.get(hash+1);
 		if (hpos == pos) { 		// the item is in the main hashtable
 			if (itemPos == -1) {
-				hashcodes[hash] = -1;
+				table.set(hash, -1);
 			} else {
 				// re-chain back this hashcode
-				hashcodes[hash] = hashitems[itemPos];
-				hashcodes[hash+1] = hashitems[itemPos+1];
+				table.set(hash, hashitems.get(itemPos));
+				table.set(hash+1, hashitems.get(itemPos+1));
 				free_hashitem(itemPos);
 			}
 			return;
 		}
-		
-		if (true) {
-			//return;
-		}
 
 		// the item is not in the main hashtable: look it up in the hashitem linktable
 		int nextItem, prevItem = -1;
 		while (itemPos != -1) {
-			hpos = hashitems[itemPos];
-			nextItem = hashitems[itemPos+1];
+			hpos = hashitems.get(itemPos);
+			nextItem = hashitems.get(itemPos+1);
 			if (hpos == pos) {
 				if (prevItem == -1) {
 					// first item, link in the main hashcodes array
-					hashcodes[hash+1] = nextItem;
+					table.set(hash+1, nextItem);
 				} else {
 					// update chain in the hashitems array
-					hashitems[prevItem+1] = nextItem;
+					hashitems.set(prevItem+1, nextItem);
 				}
 				free_hashitem(itemPos);
 				return;
@@ -442,8 +715,8 @@ public class MDDStoreImpl implements MDDStore {
 		if (item == lastitem-2) {
 			lastitem = item;
 		} else {
-			hashitems[item]   = -1;
-			hashitems[item+1] = freeItem;
+			hashitems.set(item, -1);
+			hashitems.set(item+1, freeItem);
 			freeItem = item;
 		}
 	}
@@ -452,30 +725,30 @@ public class MDDStoreImpl implements MDDStore {
 	 * Internal method to insert a new hash.
 	 * It works like <code>get_free_bloc</code>
 	 */
-	private void place_hash(int blocPos, int hash) {
-		if (hashcodes[hash] == -1) {
-			hashcodes[hash] = blocPos;
-			hashcodes[hash+1] = -1;
+	private void place_hash(IntStorage table, int blocPos, int hash) {
+		if (table.get(hash) == -1) {
+			table.set(hash, blocPos);
+			table.set(hash+1, -1);
 			return;
 		}
 		int pos;
 		if (freeItem >= 0) {
 			pos = freeItem;
-			freeItem = hashitems[pos+1];
+			freeItem = hashitems.get(pos+1);
 		} else {
 			pos = lastitem;
-			lastitem += 2;
-			if (lastitem > hashitems.length) {
-				hashitems = extend_array(hashitems);
+			if (lastitem+2 > hashitems.length()) {
+				hashitems = extend_array("hashitems", hashitems, hash_size(hashitems.length()));
 			}
+			lastitem += 2;
 		}
 		
-		hashitems[pos] = blocPos;
-		hashitems[pos+1] = hashcodes[hash+1];
-		if (hashcodes[hash+1] == pos) {
+		hashitems.set(pos, blocPos);
+		hashitems.set(pos+1, table.get(hash+1));
+		if (table.get(hash+1) == pos) {
 			System.err.println("BIG BUG with hash link list!");
 		}
-		hashcodes[hash+1] = pos;
+		table.set(hash+1, pos);
 	}
 
 	/**
@@ -493,29 +766,32 @@ public class MDDStoreImpl implements MDDStore {
 			}
 			return newValues[node];
 		}
-		int level = blocs[node];
+		int level = getLevel(node);
 		int nbval = variables[level].nbval;
-		if (nbval == 2) {
-			int l = leafFlip(blocs[node+INC_VALUES], newValues);
-			int r = leafFlip(blocs[node+INC_VALUES+1], newValues);
-			return getNodeFree(level, l, r);
-		}
-		
 		int[] children = new int[nbval];
-		for (int i=0 ; i<children.length ; i++) {
-			children[i] = leafFlip(blocs[node+INC_VALUES+i], newValues);
+		int done = 0;
+		try {
+			for ( ; done<children.length ; done++) {
+				children[done] = leafFlip(getChild(node, done), newValues);
+			}
+			return getNodeFree(level, children);
+		} catch (MDDLimitException e) {
+			// release the partial result
+			for (int i=0 ; i<done ; i++) {
+				free(children[i]);
+			}
+			throw e;
 		}
-		return getNodeFree(level, children);
 	}
 
 
 	@Override
-	public synchronized int not(int node) {
+	public int not(int node) {
 		return leafFlip(node, NOTFLIP);
 	}
 
 	@Override
-	public synchronized int mnot(int node, int v) {
+	public int mnot(int node, int v) {
 		int[] flipper = new int[v+1];
 		flipper[0] = v;
 		for (int i=1 ; i<v ; i++) {
@@ -546,8 +822,8 @@ public class MDDStoreImpl implements MDDStore {
 			return NodeRelation.NL;
 		}
 		
-		int l1 = blocs[first];
-		int l2 = blocs[other];
+		int l1 = getLevel(first);
+		int l2 = getLevel(other);
 		if (l1 == l2) {
 			return NodeRelation.NN;
 		} else if (l1 < l2) {
@@ -574,8 +850,7 @@ public class MDDStoreImpl implements MDDStore {
      * @return
      */
 	private int compute_bhash(int var, int lchild, int rchild) {
-		int hash = PAIR(rchild, PAIR(lchild, var));
-		return (Math.abs(hash) % (hashcodes.length / 2))*2;
+		return PAIR(rchild, PAIR(lchild, var));
 	}
 
 	/**
@@ -590,7 +865,51 @@ public class MDDStoreImpl implements MDDStore {
 		for (int i=0 ; i<children.length ; i++) {
 			hash = PAIR(children[i], hash);
 		}
-		return (Math.abs(hash) % (hashcodes.length / 2))*2;
+		return hash;
+	}
+
+	/**
+	 * Compute the hashcode of an existing node.
+	 * 
+	 * @param pos
+	 * @return
+	 */
+	private int bloc_hash(int pos) {
+		IntStorage segment = segment(pos);
+		int offset = offset(pos);
+		int var = segment.get(offset);
+		int nbval = variables[var].nbval;
+		if (nbval == 2) {
+			return compute_bhash(var, segment.get(offset+INC_VALUES), segment.get(offset+INC_VALUES+1));
+		}
+		int[] children = new int[nbval];
+		segment.read(offset+INC_VALUES, children, 0, nbval);
+		return compute_mhash(var, children);
+	}
+
+	/**
+	 * Get the position of a hashcode in a hashtable.
+	 * 
+	 * @param raw	the hashcode
+	 * @param table	the hashtable
+	 * @return the position of the cell for this hashcode
+	 */
+	private static int bucket(int raw, IntStorage table) {
+		return (Math.abs(raw) % (table.length() / 2))*2;
+	}
+
+	/**
+	 * Select the hashtable for a hashcode: during an incremental rehash,
+	 * cells of the previous table which are not yet migrated remain in use.
+	 * 
+	 * @param raw	the hashcode
+	 * @return the hashtable holding this hashcode
+	 */
+	private IntStorage getTable(int raw) {
+		if (oldHashcodes != null && bucket(raw, oldHashcodes) >= migrated) {
+			return oldHashcodes;
+		}
+		return hashcodes;
 	}
 
 	/**
@@ -604,7 +923,9 @@ public class MDDStoreImpl implements MDDStore {
 	 * @return
 	 */
 	private boolean is_equal(int position, int var, int lchild, int rchild) {
-		return blocs[position] == var && blocs[position+INC_VALUES] == lchild && blocs[position+INC_VALUES+1] == rchild;
+		IntStorage segment = segment(position);
+		int offset = offset(position);
+		return segment.get(offset) == var && segment.get(offset+INC_VALUES) == lchild && segment.get(offset+INC_VALUES+1) == rchild;
 	}
 
 	/**
@@ -616,11 +937,13 @@ public class MDDStoreImpl implements MDDStore {
 	 * @return
 	 */
 	private boolean is_equal(int position, int var, int[] children) {
-		if (blocs[position] != var) {
+		IntStorage segment = segment(position);
+		int offset = offset(position);
+		if (segment.get(offset) != var) {
 			return false;
 		}
 		for (int i=0 ; i<children.length ; i++) {
-			if (blocs[position+INC_VALUES+i] != children[i]) {
+			if (segment.get(offset+INC_VALUES+i) != children[i]) {
 				return false;
 			}
 		}
@@ -628,6 +951,40 @@ public class MDDStoreImpl implements MDDStore {
 	}
 
 
+	/**
+	 * Get the storage segment holding the bloc of a node.
+	 * 
+	 * @param node
+	 * @return the segment containing the bloc
+	 */
+	private IntStorage segment(int node) {
+		return segments[(node - nbleaves) >>> SEGMENT_BITS];
+	}
+
+	/**
+	 * Get the position of the bloc of a node in its segment.
+	 * 
+	 * @param node
+	 * @return the position of the first cell of the bloc
+	 */
+	private int offset(int node) {
+		return ((node - nbleaves) & SEGMENT_MASK) * blocsize;
+	}
+
+	/**
+	 * @return the number of nodes which can be stored in the allocated segments
+	 */
+	private long getCapacity() {
+		return (long)(nbsegments-1) * SEGMENT_NODES + segments[nbsegments-1].length() / blocsize;
+	}
+
+	/**
+	 * @return the number of cells in the allocated segments
+	 */
+	private long getStorageSize() {
+		return (long)(nbsegments-1) * SEGMENT_NODES * blocsize + segments[nbsegments-1].length();
+	}
+
 	/**
 	 * Get the next free data bloc.
 	 * Look-up among free blocs or allocate a new one.
@@ -637,52 +994,145 @@ public class MDDStoreImpl implements MDDStore {
 	private int get_free_bloc() {
 		int pos = freeBloc;
 		if (pos >= 0) {
-			freeBloc = blocs[pos+1];
+			freeBloc = segment(pos).get(offset(pos)+INC_COUNT);
+			recycled++;
 			return pos;
 		}
+		if (lastbloc == Integer.MAX_VALUE) {
+			throw new MDDLimitException("No identifier left for new nodes");
+		}
 		pos = lastbloc;
-		lastbloc += blocsize;
-		if (lastbloc > blocs.length) {
-			blocs = extend_array(blocs);
+		if (pos - nbleaves >= getCapacity()) {
+			extend_storage();
 		}
+		lastbloc++;
 		return pos;
 	}
 
 	/**
-	 * extend an array: allocate a bigger array and copy existing data.
+	 * Make room for more nodes: the first segment grows until it reaches the
+	 * size of a full segment, then new segments are added.
+	 */
+	private void extend_storage() {
+		IntStorage last = segments[nbsegments-1];
+		int size = SEGMENT_NODES * blocsize;
+		if (last.length() < size) {
+			segments[nbsegments-1] = extend_array("blocs", last, Math.min(2*last.length(), size));
+			return;
+		}
+
+		extensionCount++;
+		if (nbsegments == segments.length) {
+			segments = Arrays.copyOf(segments, 2*nbsegments);
+		}
+		segments[nbsegments++] = last.allocate(size);
+		if (MDDEvents.isEnabled()) {
+			MDDEvents.tableGrowth("segments", nbsegments-1, nbsegments);
+		}
+	}
+
+	/**
+	 * extend an array to a given size.
 	 */
-	private int[] extend_array(int[] data) {
-		int[] new_array = new int[data.length*2];
-		System.arraycopy(data, 0, new_array, 0, data.length);
+	private IntStorage extend_array(String name, IntStorage data, int size) {
+		extensionCount++;
+		int length = data.length();
+		IntStorage new_array = data.extend(size);
+		if (MDDEvents.isEnabled()) {
+			MDDEvents.tableGrowth(name, length, size);
+		}
 		return new_array;
 	}
 	
 	/**
-	 * extend the hashing array: allocate a bigger array and recompute all hash
-	 * into the new array.
+	 * Get the next size of an array of the unique table, bounded by the maximal size.
+	 * 
+	 * @param length	the current number of cells
+	 * @return the new number of cells
+	 */
+	private int hash_size(int length) {
+		return (int)Math.min(2L*length, maxHashCells);
+	}
+
+	/**
+	 * Extend the hashtable if it would be too full with a new node.
+	 * This is called before creating the node, as the extension may fail.
+	 * 
+	 * @return true if the hashtable was extended
+	 */
+	private boolean prepare_hash() {
+		if ( (100L*(nbnodes+1))/hashcodes.length() > FILL_LIMIT && hashcodes.length() < maxHashCells) {
+			extend_hash();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * extend the hashing array: allocate a bigger array, in which the existing hashcodes
+	 * will be migrated incrementally, a few cells at each request for a node.
 	 */
 	private void extend_hash() {
-		hashcodes = new int[hashcodes.length*2];
-		reset_hash();
-		
-		for (int i=nbleaves ; i<lastbloc ; i+= blocsize) {
-			int idvar = blocs[i];
-			if (idvar < 0) {
-				// empty bloc, skip it
+		if (oldHashcodes != null) {
+			// the previous extension is not finished yet
+			migrate(oldHashcodes.length());
+		}
+		long start = System.nanoTime();
+		// allocate the new array before changing the store
+		IntStorage extended = hashcodes.allocate(hash_size(hashcodes.length()));
+		extended.fill(-1);
+		if (MDDEvents.isEnabled()) {
+			MDDEvents.tableGrowth("hashcodes", hashcodes.length(), extended.length());
+			rehashEvent = MDDEvents.beginRehash();
+		}
+		oldHashcodes = hashcodes;
+		migrated = 0;
+		hashcodes = extended;
+		rehashCount++;
+		rehashTime += System.nanoTime() - start;
+	}
+
+	/**
+	 * Perform a step of the incremental rehash, if one is running.
+	 */
+	private void migrate_step() {
+		if (oldHashcodes != null) {
+			migrate(2*MIGRATION_STEP);
+		}
+	}
+
+	/**
+	 * Move the content of some cells of the previous hashtable into the current one.
+	 * 
+	 * @param size the number of cells to move
+	 */
+	private void migrate(int size) {
+		long start = System.nanoTime();
+		int end = Math.min(migrated + size, oldHashcodes.length());
+		for ( ; migrated < end ; migrated += 2) {
+			int pos = oldHashcodes.get(migrated);
+			if (pos == -1) {
 				continue;
 			}
-			int nbval = variables[idvar].nbval;
-			int hash;
-			if (nbval == 2) {
-				hash = compute_bhash(idvar, blocs[i+INC_VALUES], blocs[i+INC_VALUES+1]);
-			} else {
-				int[] children = new int[nbval];
-				System.arraycopy(blocs, i+INC_VALUES, children, 0, nbval);
-				hash = compute_mhash(idvar, children);
+			int item = oldHashcodes.get(migrated+1);
+			oldHashcodes.set(migrated, -1);
+			oldHashcodes.set(migrated+1, -1);
+			place_hash(hashcodes, pos, bucket(bloc_hash(pos), hashcodes));
+			while (item != -1) {
+				pos = hashitems.get(item);
+				int next = hashitems.get(item+1);
+				free_hashitem(item);
+				place_hash(hashcodes, pos, bucket(bloc_hash(pos), hashcodes));
+				item = next;
 			}
-			
-			// link it
-			place_hash(i, hash);
+		}
+		rehashTime += System.nanoTime() - start;
+
+		if (migrated >= oldHashcodes.length()) {
+			oldHashcodes.release();
+			oldHashcodes = null;
+			MDDEvents.endRehash(rehashEvent, hashcodes.length(), nbnodes);
+			rehashEvent = null;
 		}
 	}
 
@@ -691,17 +1141,98 @@ public class MDDStoreImpl implements MDDStore {
 	 */
 	private void reset_hash() {
 		// clear all positions
-		for (int i=0 ; i<hashcodes.length ; i++) {
-			hashcodes[i] = -1;
-		}
+		hashcodes.fill(-1);
 		// clear hashitems
-		for (int i=0 ; i<hashitems.length ; i++) {
-			hashitems[i] = -1;
-		}
+		hashitems.fill(-1);
 		lastitem = 0;
 		freeItem = -1;
 	}
 
+	/**
+	 * Start a new traversal: all nodes are considered as unvisited.
+	 * Traversals use a single set of marks and can not be nested.
+	 */
+	private void startTraversal() {
+		if (epoch == Integer.MAX_VALUE) {
+			for (int[] m: marks) {
+				if (m != null) {
+					Arrays.fill(m, 0);
+				}
+			}
+			epoch = 0;
+		}
+		if (marks.length < nbsegments) {
+			marks = Arrays.copyOf(marks, segments.length);
+		}
+		// new marks are cleared, they never match the next epoch
+		for (int s=0 ; s<nbsegments ; s++) {
+			int size = segments[s].length() / blocsize;
+			if (marks[s] == null || marks[s].length < size) {
+				marks[s] = new int[size];
+			}
+		}
+		epoch++;
+	}
+
+	/**
+	 * Mark a node as visited in the current traversal.
+	 * 
+	 * @param node
+	 * @return true if the node was not yet visited
+	 */
+	private boolean mark(int node) {
+		int[] m = marks[(node - nbleaves) >>> SEGMENT_BITS];
+		int idx = (node - nbleaves) & SEGMENT_MASK;
+		if (m[idx] == epoch) {
+			return false;
+		}
+		m[idx] = epoch;
+		return true;
+	}
+
+	@Override
+	public long getFingerprint(int node) {
+		if (isleaf(node)) {
+			return mix(node + 0x632be59bd9b4e019L);
+		}
+
+		int s = (node - nbleaves) >>> SEGMENT_BITS;
+		int idx = (node - nbleaves) & SEGMENT_MASK;
+		if (s < fingerprints.length && fingerprints[s] != null && idx < fingerprints[s].length && fingerprints[s][idx] != 0) {
+			return fingerprints[s][idx];
+		}
+
+		MDDVariable var = variables[getLevel(node)];
+		long fp = mix(((long)var.key.hashCode() << 8) ^ var.nbval);
+		for (int i=0 ; i<var.nbval ; i++) {
+			fp = mix(fp * 31 + getFingerprint(getChild(node, i)));
+		}
+		if (fp == 0) {
+			fp = 1;
+		}
+
+		if (s >= fingerprints.length) {
+			fingerprints = Arrays.copyOf(fingerprints, segments.length);
+		}
+		int size = segments[s].length() / blocsize;
+		if (fingerprints[s] == null) {
+			fingerprints[s] = new long[size];
+		} else if (fingerprints[s].length < size) {
+			fingerprints[s] = Arrays.copyOf(fingerprints[s], size);
+		}
+		fingerprints[s][idx] = fp;
+		return fp;
+	}
+
+	/**
+	 * Scramble the bits of a 64 bit value (finalizer of the splitmix64 generator).
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
 	@Override
 	public int getNodeCount() {
 		return nbnodes;
@@ -727,7 +1258,7 @@ public class MDDStoreImpl implements MDDStore {
 		if (isleaf(id)) {
 			return -1;
 		}
-		return blocs[id];
+		return segment(id).get(offset(id));
 	}
 
 	@Override
@@ -738,7 +1269,7 @@ public class MDDStoreImpl implements MDDStore {
 		if (value < 0) {
 			return -5;
 		}
-		return blocs[id+INC_VALUES+value];
+		return segment(id).get(offset(id)+INC_VALUES+value);
 	}
 
 	@Override
@@ -749,7 +1280,7 @@ public class MDDStoreImpl implements MDDStore {
 		
 		int nbchildren = getNodeVariable(node).nbval;
 		int[] next = new int[nbchildren];
-		System.arraycopy(blocs, node+INC_VALUES, next, 0, nbchildren);
+		segment(node).read(offset(node)+INC_VALUES, next, 0, nbchildren);
 		return next;
 	}
 
@@ -813,98 +1344,62 @@ public class MDDStoreImpl implements MDDStore {
 
     @Override
 	public int getSign(int node, MDDVariable pivot) {
-		return getSign(node, pivot, 0);
-	}
-	
-	private int getSign(int node, MDDVariable pivot, int curSign) {
-		if (isleaf(node)) {
-			return curSign;
-		}
-
-		MDDVariable var = getNodeVariable(node);
-		if (var.order < pivot.order) {
-			// recursive call
-			for (int i=0 ; i<var.nbval ; i++) {
-				curSign = getSign(getChild(node, i), pivot, curSign);
-			}
-		} else if (var == pivot) {
-			for (int i=1 ; i<var.nbval ; i++) {
-				curSign = getSign_sub(getChild(node, i-1), getChild(node, i), curSign);
-			}
-		}
-		return curSign;
-	}
-	
-	private int getSign_sub(int n1, int n2, int curSign) {
-		if (n1 == n2) {
-			return curSign;
-		}
-		int nbval;
-		switch (getRelation(n1, n2)) {
-		case LL:
-			// make the choice!
-			if (n1 > n2) {
-				switch (curSign) {
-				case 0:
-					curSign = -1;
-					break;
-				case 1:
-					curSign = 2;
-					break;
-				}
-			} else if (n1 < n2) {
-				switch (curSign) {
-				case 0:
-					curSign = 1;
-					break;
-				case -1:
-					curSign = 2;
-					break;
-				}
-			}
-			break;
-		case LN:
-		case NNf:
-			nbval = getNodeVariable(n2).nbval;
-			for (int i=0 ; i<nbval ; i++) {
-				curSign = getSign_sub(n1, getChild(n2, i), curSign);
-			}
-			break;
-		case NL:
-		case NNn:
-			nbval = getNodeVariable(n1).nbval;
-			for (int i=0 ; i<nbval ; i++) {
-				curSign = getSign_sub(getChild(n1, i), n2, curSign);
-			}
-			break;
-		case NN:
-			nbval = getNodeVariable(n1).nbval;
-			for (int i=0 ; i<nbval ; i++) {
-				curSign = getSign_sub(getChild(n1, i), getChild(n2, i), curSign);
-			}
-			break;
+		switch (getVariableEffect(pivot, node)) {
+		case POSITIVE:
+			return 1;
+		case NEGATIVE:
+			return -1;
+		case DUAL:
+			return 2;
+		default:
+			return 0;
 		}
-		return curSign;
 	}
-	
+
 	@Override
 	public boolean[] collectDecisionVariables(int node) {
 		boolean[] vars = new boolean[variables.length];
 		
+		startTraversal();
 		collectDecisionVariables(vars, node);
 		
 		return vars;
 	}
-	
+
+	@Override
+	public boolean[] collectDecisionVariables(int[] nodes, boolean[][] supports) {
+		boolean[] union = new boolean[variables.length];
+		if (supports == null) {
+			startTraversal();
+			for (int node: nodes) {
+				collectDecisionVariables(union, node);
+			}
+			return union;
+		}
+
+		Map<Integer, BitSet> memo = new HashMap<Integer, BitSet>();
+		for (int i=0 ; i<nodes.length ; i++) {
+			BitSet support = collectSupport(nodes[i], memo);
+			boolean[] vars = new boolean[variables.length];
+			for (int l = support.nextSetBit(0) ; l >= 0 ; l = support.nextSetBit(l+1)) {
+				vars[l] = true;
+				union[l] = true;
+			}
+			supports[i] = vars;
+		}
+		return union;
+	}
+
 	/**
 	 * Recursive backend for collectDecisionVariables(int).
+	 * Each node is visited only once: <code>startTraversal()</code> must be called first.
 	 * 
 	 * @param flags
 	 * @param node
 	 */
 	private void collectDecisionVariables(boolean[] flags, int node) {
 		MDDVariable var = getNodeVariable(node);
-		if (var == null) {
+		if (var == null || !mark(node)) {
 			return;
 		}
 		
@@ -914,171 +1409,221 @@ public class MDDStoreImpl implements MDDStore {
 		}
 	}
 
-	@Override
-	public VariableEffect getVariableEffect(MDDVariable var, int node) {
-		
-		// no effect if we can not encounter the wanted variable
-		MDDVariable curVar = getNodeVariable(node);
-		if (curVar == null || curVar.after(var)) {
-			return VariableEffect.NONE;
+	/**
+	 * Recursive backend for collectDecisionVariables(int[], boolean[][]):
+	 * the support of each node is memoized to be shared between roots.
+	 * 
+	 * @param node
+	 * @param memo
+	 * @return the levels of the variables on which the node depends
+	 */
+	private BitSet collectSupport(int node, Map<Integer, BitSet> memo) {
+		BitSet support = memo.get(node);
+		if (support != null) {
+			return support;
 		}
 
-		// if we found the variable, we will find an effect downstream
-		if (curVar.equals(var)) {
-			VariableEffect effect = VariableEffect.NONE;
-			int curChild = getChild(node, 0);
-			for (int value=1 ; value < var.nbval ; value++) {
-				int nextChild = getChild(node, value);
-				if (nextChild != curChild) {
-					effect = effect.combine( lookupEffect(curChild, nextChild) );
-					curChild = nextChild;
-				}
+		support = new BitSet(variables.length);
+		MDDVariable var = getNodeVariable(node);
+		if (var != null) {
+			support.set(var.order);
+			for (int i=0 ; i<var.nbval ; i++) {
+				support.or(collectSupport(getChild(node, i), memo));
 			}
-			return effect;
 		}
+		memo.put(node, support);
+		return support;
+	}
 
-
-		// otherwise, just browse deeper
-		int curChild = getChild(node, 0);
-		VariableEffect effect = getVariableEffect(var, curChild);
-		for (int value=1 ; value < curVar.nbval ; value++) {
-			int nextChild = getChild(node, value);
-			if (nextChild != curChild) {
-				curChild = nextChild;
-				effect = effect.combine( getVariableEffect(var, nextChild) );
-				if (effect == VariableEffect.DUAL) {
-					return effect;
-				}
-			}
+	@Override
+	public VariableEffect getVariableEffect(MDDVariable var, int node) {
+		VariableEffect[] effects = getMultivaluedVariableEffect(var, node);
+		VariableEffect effect = VariableEffect.NONE;
+		for (VariableEffect e: effects) {
+			effect = effect.combine(e);
 		}
-		
 		return effect;
 	}
 
 	@Override
 	public VariableEffect[] getMultivaluedVariableEffect(MDDVariable var, int node) {
-		if (var.nbval == 2) {
-			return new VariableEffect[] { getVariableEffect(var, node) };
+		VariableEffect[][] effects = new VariableEffect[variables.length][];
+		startTraversal();
+		inspectVariableEffects(var, node, effects, new HashMap<Long, VariableEffect>());
+		if (effects[var.order] == null) {
+			return getEmptyEffects(var);
 		}
-		
-		// real multivalued lookup
+		return effects[var.order];
+	}
+
+	@Override
+	public VariableEffect[] getVariableEffects(int node) {
+		VariableEffect[][] mvEffects = getMultivaluedVariableEffects(node);
+		VariableEffect[] effects = new VariableEffect[mvEffects.length];
+		for (int i=0 ; i<effects.length ; i++) {
+			VariableEffect effect = VariableEffect.NONE;
+			for (VariableEffect e: mvEffects[i]) {
+				effect = effect.combine(e);
+			}
+			effects[i] = effect;
+		}
+		return effects;
+	}
+
+	@Override
+	public VariableEffect[][] getMultivaluedVariableEffects(int node) {
+		VariableEffect[][] effects = new VariableEffect[variables.length][];
+		startTraversal();
+		inspectVariableEffects(null, node, effects, new HashMap<Long, VariableEffect>());
+		for (int i=0 ; i<effects.length ; i++) {
+			if (effects[i] == null) {
+				effects[i] = getEmptyEffects(variables[i]);
+			}
+		}
+		return effects;
+	}
+
+	private VariableEffect[] getEmptyEffects(MDDVariable var) {
 		VariableEffect[] effects = new VariableEffect[var.nbval-1];
-		for (int i=1 ; i<var.nbval ; i++) {
-			effects[i-1] = VariableEffect.NONE;
+		for (int i=0 ; i<effects.length ; i++) {
+			effects[i] = VariableEffect.NONE;
 		}
-		inspectVariableEffect(var, node, effects);
 		return effects;
 	}
-	
-	private void inspectVariableEffect(MDDVariable var, int node, VariableEffect[] effects) {
+
+	/**
+	 * Browse a MDD to find the effect of its variables.
+	 * Each node is visited only once and the effects of all transitions are memoized:
+	 * the cost is linear in the size of the MDD. <code>startTraversal()</code> must be called first.
+	 *
+	 * @param pivot		the variable of interest, or null to look for all variables
+	 * @param node		the current node
+	 * @param effects	the effects of the level switches of each variable (filled lazily)
+	 * @param memo		the effects of already compared pairs of nodes
+	 */
+	private void inspectVariableEffects(MDDVariable pivot, int node, VariableEffect[][] effects, Map<Long, VariableEffect> memo) {
 		// no effect if we can not encounter the wanted variable
 		MDDVariable curVar = getNodeVariable(node);
-		if (curVar == null || curVar.after(var)) {
+		if (curVar == null || curVar.after(pivot) || !mark(node)) {
 			return;
 		}
 
-		// if we found the variable, we will find an effect downstream
-		if (curVar.equals(var)) {
+		// switching the value of the current variable gives an effect downstream
+		if (pivot == null || curVar.equals(pivot)) {
+			VariableEffect[] curEffects = effects[curVar.order];
+			if (curEffects == null) {
+				curEffects = getEmptyEffects(curVar);
+				effects[curVar.order] = curEffects;
+			}
 			int curChild = getChild(node, 0);
-			for (int value=1 ; value < var.nbval ; value++) {
+			for (int value=1 ; value < curVar.nbval ; value++) {
 				int nextChild = getChild(node, value);
 				if (nextChild != curChild) {
-					effects[value-1] = effects[value-1].combine( lookupEffect(curChild, nextChild) );
+					curEffects[value-1] = curEffects[value-1].combine( lookupEffect(curChild, nextChild, memo) );
 					curChild = nextChild;
 				}
 			}
-			return;
-		}
 
+			if (pivot != null) {
+				return;
+			}
+		}
 
-		// otherwise, just browse deeper
+		// browse deeper
 		int curChild = getChild(node, 0);
-		inspectVariableEffect(var, curChild, effects);
+		inspectVariableEffects(pivot, curChild, effects, memo);
 		for (int value=1 ; value < curVar.nbval ; value++) {
 			int nextChild = getChild(node, value);
 			if (nextChild != curChild) {
 				curChild = nextChild;
-				inspectVariableEffect(var, nextChild, effects);
+				inspectVariableEffects(pivot, nextChild, effects, memo);
 			}
 		}
-		
-		return;
 	}
 
-	private VariableEffect lookupEffect(int low, int high) {
-		NodeRelation rel = getRelation(low, high);
-		switch (rel) {
+	private VariableEffect lookupEffect(int low, int high, Map<Long, VariableEffect> memo) {
+		if (low == high) {
+			return VariableEffect.NONE;
+		}
 
-		case LL:
+		NodeRelation rel = getRelation(low, high);
+		if (rel == NodeRelation.LL) {
 			if (low < high) {
 				return VariableEffect.POSITIVE;
 			}
-			if (low > high) {
-				return VariableEffect.NEGATIVE;
-			}
-			return VariableEffect.NONE;
+			return VariableEffect.NEGATIVE;
+		}
+
+		Long key = ((long)low << 32) | (high & 0xffffffffL);
+		VariableEffect effect = memo.get(key);
+		if (effect != null) {
+			return effect;
+		}
 
+		switch (rel) {
 
 		case LN:
 		case NNf:
 			MDDVariable var = getNodeVariable(high);
 			int curChild = getChild(high, 0);
-			VariableEffect effect = lookupEffect(low, curChild);
+			effect = lookupEffect(low, curChild, memo);
 			for (int value=1 ; value < var.nbval ; value++) {
 				int nextChild = getChild(high, value);
 				if (nextChild != curChild) {
 					curChild = nextChild;
-					effect = effect.combine( lookupEffect(low, nextChild) );
+					effect = effect.combine( lookupEffect(low, nextChild, memo) );
 					if (effect == VariableEffect.DUAL) {
-						return effect;
+						break;
 					}
 				}
 			}
-			return effect;
+			break;
 
 
 		case NL:
 		case NNn:
 			var = getNodeVariable(low);
 			curChild = getChild(low, 0);
-			effect = lookupEffect(curChild, high);
+			effect = lookupEffect(curChild, high, memo);
 			for (int value=1 ; value < var.nbval ; value++) {
 				int nextChild = getChild(low, value);
 				if (nextChild != curChild) {
 					curChild = nextChild;
-					effect = effect.combine( lookupEffect(nextChild, high) );
+					effect = effect.combine( lookupEffect(nextChild, high, memo) );
 					if (effect == VariableEffect.DUAL) {
-						return effect;
+						break;
 					}
 				}
 			}
-			return effect;
+			break;
 
 
 		case NN:
 			var = getNodeVariable(high);
 			curChild = getChild(high, 0);
 			int curChildLow = getChild(low, 0);
-			effect = lookupEffect(curChildLow, curChild);
+			effect = lookupEffect(curChildLow, curChild, memo);
 			for (int value=1 ; value < var.nbval ; value++) {
 				int nextChild = getChild(high, value);
 				int nextChildLow = getChild(low, value);
 				if (nextChild != curChild || nextChildLow != curChildLow) {
 					curChild = nextChild;
 					curChildLow = nextChildLow;
-					effect = effect.combine( lookupEffect(nextChildLow, nextChild) );
+					effect = effect.combine( lookupEffect(nextChildLow, nextChild, memo) );
 					if (effect == VariableEffect.DUAL) {
-						return effect;
+						break;
 					}
 				}
 			}
-			return effect;
+			break;
 
 
 		default:
 			throw new RuntimeException("Invalid node relation");
 		}
-		
+
+		memo.put(key, effect);
+		return effect;
 	}
 
 	/* ***************** DEBUG ********************** */
@@ -1095,11 +1640,11 @@ public class MDDStoreImpl implements MDDStore {
 			System.out.println(prefix+node);
 			return;
 		}
-		MDDVariable var = variables[blocs[node]];
+		MDDVariable var = variables[getLevel(node)];
 		System.out.println(prefix+var.key);
 		prefix += "   ";
 		for (int i=0 ; i<var.nbval ; i++) {
-			print(blocs[node+INC_VALUES+i], prefix);
+			print(getChild(node, i), prefix);
 		}
 	}
 	
@@ -1118,7 +1663,10 @@ public class MDDStoreImpl implements MDDStore {
 		System.out.print("HList:  ");
 		prettyPrintArray(hashitems, 0, 2, lastitem);
 		System.out.print("Data:   ");
-		prettyPrintArray(blocs, nbleaves, blocsize, lastbloc);
+		for (int s=0 ; s<nbsegments ; s++) {
+			long used = Math.min((long)SEGMENT_NODES, lastbloc - nbleaves - (long)s*SEGMENT_NODES);
+			prettyPrintArray(segments[s], 0, blocsize, (int)used*blocsize);
+		}
 		System.out.println("------------------------------------------------------------");
 	}
 
@@ -1130,16 +1678,16 @@ public class MDDStoreImpl implements MDDStore {
 	 * @param bs	block size
 	 * @param last	last element to print
 	 */
-	private void prettyPrintArray(int[] a, int skip, int bs, int last) {
+	private void prettyPrintArray(IntStorage a, int skip, int bs, int last) {
 		if (last == -1) {
-			last = a.length;
+			last = a.length();
 		}
 		for (int i=0 ; i<last ; i++) {
 			int b = i-skip;
 			if (b>=0 && b%bs == 0) {
 				System.out.print("| ");
 			}
-			System.out.print(a[i]+" ");
+			System.out.print(a.get(i)+" ");
 		}
 		System.out.println();
 	}
@@ -1158,7 +1706,7 @@ public class MDDStoreImpl implements MDDStore {
 	}
 
     @Override
-    public synchronized int nodeFromState(byte[] state, int value) {
+    public int nodeFromState(byte[] state, int value) {
         if (value < 1) {
             return value;
         }
@@ -1166,25 +1714,199 @@ public class MDDStoreImpl implements MDDStore {
         int node = value;
         for (int l=variables.length-1 ; l>-1 ; l--) {
             int v = state[l];
-            node = getSingleChildNode(l, v, node);
+            if (v < 0) {
+                continue;
+            }
+            int nextNode = getSingleChildNode(l, v, node);
+            free(node);
+            node = nextNode;
         }
         return node;
     }
 
     @Override
-    public synchronized int nodeFromStates(Collection<byte[]> states, int value) {
-        int node = 0;
-        for (byte[] state: states) {
-            int newNode = nodeFromState(state, value);
-            int nextNode = MDDBaseOperators.OR.combine(this, node, newNode);
-            free(newNode);
-            free(node);
-            node = nextNode;
+    public int nodeFromStates(Collection<byte[]> states, int value) {
+        if (states.isEmpty()) {
+            return 0;
+        }
+        int[] nodes = new int[states.size()];
+        int done = 0;
+        try {
+            for (byte[] state: states) {
+                nodes[done] = nodeFromState(state, value);
+                done++;
+            }
+            return BalancedReduction.reduce(this, MDDBaseOperators.OR, nodes);
+        } finally {
+            for (int i=0 ; i<done ; i++) {
+                free(nodes[i]);
+            }
         }
-        return node;
     }
     @Override
-    public synchronized int nodeFromState(byte[] state, int value, int[] orderMap) {
+    public int nodeFromTable(MDDVariable[] vars, byte[] table) {
+        int[] sorted = sortVariables(vars);
+
+        // position of each variable in the encoding of the table
+        long size = 1;
+        int[] strides = new int[vars.length];
+        for (int i=vars.length-1 ; i>=0 ; i--) {
+            strides[i] = (int)size;
+            size *= vars[i].nbval;
+            if (size > Integer.MAX_VALUE) {
+                throw new MDDLimitException("Table too large for "+vars.length+" variables");
+            }
+        }
+        if (size != table.length) {
+            throw new RuntimeException("Table size mismatch: expected "+size+" values, got "+table.length);
+        }
+
+        // read the leaves following the order of the levels, the last level changing first
+        int[] layer = new int[table.length];
+        int[] digits = new int[vars.length];
+        int index = 0;
+        for (int i=0 ; i<layer.length ; i++) {
+            int value = table[index];
+            if (value < 0 || value >= nbleaves) {
+                throw new RuntimeException("Invalid value in table: "+value);
+            }
+            layer[i] = value;
+            for (int l=sorted.length-1 ; l>=0 ; l--) {
+                int v = sorted[l];
+                digits[v]++;
+                index += strides[v];
+                if (digits[v] < vars[v].nbval) {
+                    break;
+                }
+                index -= digits[v] * strides[v];
+                digits[v] = 0;
+            }
+        }
+
+        // merge the nodes of each level, from the bottom
+        for (int l=sorted.length-1 ; l>=0 ; l--) {
+            MDDVariable var = vars[sorted[l]];
+            int[] next = new int[layer.length / var.nbval];
+            int[] children = new int[var.nbval];
+            int done = 0;
+            try {
+                for ( ; done<next.length ; done++) {
+                    System.arraycopy(layer, done*children.length, children, 0, children.length);
+                    next[done] = getNode(var.order, children);
+                }
+            } catch (MDDLimitException e) {
+                for (int i=0 ; i<done ; i++) {
+                    free(next[i]);
+                }
+                throw e;
+            } finally {
+                for (int node: layer) {
+                    free(node);
+                }
+            }
+            layer = next;
+        }
+        return layer[0];
+    }
+
+    @Override
+    public int nodeFromTuples(MDDVariable[] vars, Collection<byte[]> tuples, int value) {
+        int[] sorted = sortVariables(vars);
+        if (value < 0 || value >= nbleaves) {
+            throw new RuntimeException("Invalid value: "+value);
+        }
+        if (value == 0 || tuples.isEmpty()) {
+            return 0;
+        }
+
+        byte[][] rows = new byte[tuples.size()][];
+        int i = 0;
+        for (byte[] tuple: tuples) {
+            if (tuple.length != vars.length) {
+                throw new RuntimeException("Tuple size mismatch: expected "+vars.length+" values, got "+tuple.length);
+            }
+            for (int v=0 ; v<vars.length ; v++) {
+                if (tuple[v] < 0 || tuple[v] >= vars[v].nbval) {
+                    throw new RuntimeException("Invalid value for "+vars[v]+": "+tuple[v]);
+                }
+            }
+            rows[i++] = tuple;
+        }
+        return nodeFromTuples(vars, sorted, rows, new byte[rows.length][], 0, rows.length, 0, value);
+    }
+
+    /**
+     * Build the MDD for a range of tuples, which share the same values for the levels above.
+     * The range is sorted in place by the value of the current level.
+     */
+    private int nodeFromTuples(MDDVariable[] vars, int[] sorted, byte[][] rows, byte[][] buffer,
+                               int start, int end, int level, int value) {
+        if (level == sorted.length) {
+            return value;
+        }
+
+        int v = sorted[level];
+        MDDVariable var = vars[v];
+        int[] bounds = new int[var.nbval+1];
+        for (int r=start ; r<end ; r++) {
+            bounds[rows[r][v]+1]++;
+        }
+        bounds[0] = start;
+        for (int x=1 ; x<bounds.length ; x++) {
+            bounds[x] += bounds[x-1];
+        }
+        int[] positions = Arrays.copyOf(bounds, var.nbval);
+        for (int r=start ; r<end ; r++) {
+            buffer[positions[rows[r][v]]++] = rows[r];
+        }
+        System.arraycopy(buffer, start, rows, start, end-start);
+
+        int[] children = new int[var.nbval];
+        int done = 0;
+        try {
+            for ( ; done<children.length ; done++) {
+                if (bounds[done] < bounds[done+1]) {
+                    children[done] = nodeFromTuples(vars, sorted, rows, buffer, bounds[done], bounds[done+1], level+1, value);
+                }
+            }
+            return getNode(var.order, children);
+        } finally {
+            for (int x=0 ; x<done ; x++) {
+                free(children[x]);
+            }
+        }
+    }
+
+    /**
+     * Sort variables of this store following their level.
+     *
+     * @return the indices of the variables, from the top level
+     */
+    private int[] sortVariables(MDDVariable[] vars) {
+        int[] positions = new int[variables.length];
+        Arrays.fill(positions, -1);
+        for (int i=0 ; i<vars.length ; i++) {
+            MDDVariable var = vars[i];
+            if (var.order < 0 || var.order >= variables.length || variables[var.order] != var) {
+                throw new RuntimeException("Variable "+var+" does not belong to this store");
+            }
+            if (positions[var.order] >= 0) {
+                throw new RuntimeException("Duplicated variable: "+var);
+            }
+            positions[var.order] = i;
+        }
+        int[] sorted = new int[vars.length];
+        int i = 0;
+        for (int position: positions) {
+            if (position >= 0) {
+                sorted[i++] = position;
+            }
+        }
+        return sorted;
+    }
+
+    @Override
+    public int nodeFromState(byte[] state, int value, int[] orderMap) {
         if (orderMap == null) {
             return nodeFromState(state, value);
         }
@@ -1195,14 +1917,17 @@ public class MDDStoreImpl implements MDDStore {
         int node = value;
         for (int l=variables.length-1 ; l>-1 ; l--) {
             int v = state[orderMap[l]];
-            int nextNode = getSingleChildNode(l, value, node);
+            if (v < 0) {
+                continue;
+            }
+            int nextNode = getSingleChildNode(l, v, node);
             free(node);
             node = nextNode;
         }
         return node;
     }
 
-    private synchronized int getSingleChildNode(int level, int value, int child) {
+    private int getSingleChildNode(int level, int value, int child) {
         if (value < 0) {
             return child;
         }
@@ -0,0 +1,268 @@
+package org.colomoto.mddlib.internal;
+
+import java.text.ParseException;
+import java.util.Collection;
+import java.util.List;
+
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.MDDManagerFactory;
+import org.colomoto.mddlib.MDDStatistics;
+import org.colomoto.mddlib.MDDVariable;
+import org.colomoto.mddlib.NodeRelation;
+import org.colomoto.mddlib.VariableEffect;
+
+/**
+ * Thread-safe MDDStore: all methods of {@link MDDStoreImpl} are synchronized on the store.
+ * <p>
+ * Concurrency contract:
+ * <ul>
+ *  <li>each call to the store is atomic: creating, using and freeing nodes, reading their content
+ *    and browsing MDDs can be done concurrently from several threads,</li>
+ *  <li>operators and other helpers (<code>MDDOperator</code>, <code>PathSearcher</code>, <code>MDDComposer</code>...)
+ *    perform a sequence of calls to the store. Several of them can run concurrently, but
+ *    each helper instance must be used by a single thread,</li>
+ *  <li>node IDs remain valid as long as they are in use: a thread must hold a reference on the nodes it reads
+ *    (obtained when creating them or by calling <code>use()</code>). Freeing a node still used by another thread
+ *    is a bug in the caller, as it is for a single thread,</li>
+ *  <li>proxy views (see <code>getManager(List)</code>) forward to the store and share its lock, but adding
+ *    variables through a proxy is not thread-safe.</li>
+ * </ul>
+ * Methods reading only immutable data (<code>isleaf</code>, <code>getLeafCount</code>, <code>getVariableIndex</code>)
+ * are not synchronized, nor are the accessors of the cancellation token, which can be used from any thread.
+ *
+ * @author Aurelien Naldi
+ */
+public class SynchronizedMDDStoreImpl extends MDDStoreImpl {
+
+	/**
+	 * Create a new thread-safe MDDStore using the default capacity.
+	 * Note that this constructor should be called through {@link MDDManagerFactory}, not directly.
+	 *
+	 * @param keys		the list of variables that can be used.
+	 * @param nbleaves	the number of values that can be reached.
+	 */
+	public SynchronizedMDDStoreImpl(Collection<?> keys, int nbleaves) {
+		super(keys, nbleaves);
+	}
+
+	/**
+	 * Create a new synchronized MDDStore, selecting the location of the storage.
+	 * 
+	 * @param keys		the list of variables that can be used.
+	 * @param nbleaves	the number of values that can be reached.
+	 * @param offHeap	if true, nodes and the unique table are stored outside of the Java heap.
+	 */
+	public SynchronizedMDDStoreImpl(Collection<?> keys, int nbleaves, boolean offHeap) {
+		super(keys, nbleaves, offHeap);
+	}
+
+	@Override
+	public synchronized MDDManager getManager(List<?> order) {
+		return super.getManager(order);
+	}
+
+	@Override
+	public synchronized MDDVariable getNodeVariable(int n) {
+		return super.getNodeVariable(n);
+	}
+
+	@Override
+	public synchronized MDDVariable getVariableForKey(Object key) {
+		return super.getVariableForKey(key);
+	}
+
+	@Override
+	public synchronized MDDVariable ensureVariable(Object key, byte nbval) {
+		return super.ensureVariable(key, nbval);
+	}
+
+	@Override
+	public synchronized MDDVariable[] getAllVariables() {
+		return super.getAllVariables();
+	}
+
+	@Override
+	public synchronized int getNode(int var, int lchild, int rchild) {
+		return super.getNode(var, lchild, rchild);
+	}
+
+	@Override
+	public synchronized int getNode(int var, int[] children) {
+		return super.getNode(var, children);
+	}
+
+	@Override
+	public synchronized int use(int node) {
+		return super.use(node);
+	}
+
+	@Override
+	public synchronized void free(int pos) {
+		super.free(pos);
+	}
+
+	@Override
+	public synchronized int not(int node) {
+		return super.not(node);
+	}
+
+	@Override
+	public synchronized int mnot(int node, int v) {
+		return super.mnot(node, v);
+	}
+
+	@Override
+	public synchronized NodeRelation getRelation(int first, int other) {
+		return super.getRelation(first, other);
+	}
+
+	@Override
+	public synchronized long getFingerprint(int node) {
+		return super.getFingerprint(node);
+	}
+
+	@Override
+	public synchronized MDDStatistics getStatistics() {
+		return super.getStatistics();
+	}
+
+	@Override
+	public synchronized void setLimits(int maxNodes, long maxBytes) {
+		super.setLimits(maxNodes, maxBytes);
+	}
+
+	@Override
+	public synchronized int getMaxNodes() {
+		return super.getMaxNodes();
+	}
+
+	@Override
+	public synchronized long getMaxBytes() {
+		return super.getMaxBytes();
+	}
+
+	@Override
+	public synchronized void close() {
+		super.close();
+	}
+
+	@Override
+	public synchronized int getNodeCount() {
+		return super.getNodeCount();
+	}
+
+	@Override
+	public synchronized int getChild(int id, int value) {
+		return super.getChild(id, value);
+	}
+
+	@Override
+	public synchronized int[] getChildren(int node) {
+		return super.getChildren(node);
+	}
+
+	@Override
+	public synchronized byte reach(int node, byte[] values) {
+		return super.reach(node, values);
+	}
+
+	@Override
+	public synchronized byte reach(int node, byte[] values, int[] orderMap) {
+		return super.reach(node, values, orderMap);
+	}
+
+	@Override
+	public synchronized byte groupReach(int node, byte[] values) {
+		return super.groupReach(node, values);
+	}
+
+	@Override
+	public synchronized byte groupReach(int node, byte[] values, int[] orderMap) {
+		return super.groupReach(node, values, orderMap);
+	}
+
+	@Override
+	public synchronized int getSign(int node, MDDVariable pivot) {
+		return super.getSign(node, pivot);
+	}
+
+	@Override
+	public synchronized boolean[] collectDecisionVariables(int node) {
+		return super.collectDecisionVariables(node);
+	}
+
+	@Override
+	public synchronized boolean[] collectDecisionVariables(int[] nodes, boolean[][] supports) {
+		return super.collectDecisionVariables(nodes, supports);
+	}
+
+	@Override
+	public synchronized VariableEffect getVariableEffect(MDDVariable var, int node) {
+		return super.getVariableEffect(var, node);
+	}
+
+	@Override
+	public synchronized VariableEffect[] getMultivaluedVariableEffect(MDDVariable var, int node) {
+		return super.getMultivaluedVariableEffect(var, node);
+	}
+
+	@Override
+	public synchronized VariableEffect[] getVariableEffects(int node) {
+		return super.getVariableEffects(node);
+	}
+
+	@Override
+	public synchronized VariableEffect[][] getMultivaluedVariableEffects(int node) {
+		return super.getMultivaluedVariableEffects(node);
+	}
+
+	@Override
+	public synchronized boolean isView(MDDManager ddm) {
+		return super.isView(ddm);
+	}
+
+	@Override
+	public synchronized int nodeFromState(byte[] state, int value) {
+		return super.nodeFromState(state, value);
+	}
+
+	@Override
+	public synchronized int nodeFromStates(Collection<byte[]> states, int value) {
+		return super.nodeFromStates(states, value);
+	}
+
+	@Override
+	public synchronized int nodeFromTable(MDDVariable[] variables, byte[] table) {
+		return super.nodeFromTable(variables, table);
+	}
+
+	@Override
+	public synchronized int nodeFromTuples(MDDVariable[] variables, Collection<byte[]> tuples, int value) {
+		return super.nodeFromTuples(variables, tuples, value);
+	}
+
+	@Override
+	public synchronized int nodeFromState(byte[] state, int value, int[] orderMap) {
+		return super.nodeFromState(state, value, orderMap);
+	}
+
+	@Override
+	public synchronized String dumpMDD(int mdd) {
+		return super.dumpMDD(mdd);
+	}
+
+	@Override
+	public synchronized int parseDump(String s) throws ParseException {
+		return super.parseDump(s);
+	}
+
+	@Override
+	public synchronized void printNode(int node) {
+		super.printNode(node);
+	}
+
+	@Override
+	public synchronized void debug() {
+		super.debug();
+	}
+}
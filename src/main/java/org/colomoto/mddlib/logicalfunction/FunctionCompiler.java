@@ -0,0 +1,400 @@
+package org.colomoto.mddlib.logicalfunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.colomoto.mddlib.CancellationToken;
+import org.colomoto.mddlib.IndexMapper;
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.MDDManagerFactory;
+import org.colomoto.mddlib.MDDMapper;
+import org.colomoto.mddlib.MDDVariable;
+import org.colomoto.mddlib.MDDVariableFactory;
+import org.colomoto.mddlib.logicalfunction.operators.AbstractOperator;
+
+/**
+ * Build the MDDs of a group of logical functions, sharing their common subexpressions.
+ * <p>
+ * Functions are first simplified (see {@link FunctionSimplifier}). Identical subtrees (same operators
+ * applied to the same operands) are then detected in all functions of the group,
+ * and the MDD of each distinct subexpression is built only once.
+ * Chains of the same associative operator form a single subexpression, built in one n-ary operation.
+ * Intermediate MDDs are freed as soon as all expressions using them are built.
+ * <p>
+ * Operators must support <code>AbstractOperator.getMDD(MDDManager, int[])</code> to reuse the MDDs
+ * of their arguments, other nodes are built independently using <code>FunctionNode.getMDD(MDDManager)</code>.
+ * <p>
+ * Large groups can be built in parallel: each task builds a slice of the group in its own private store,
+ * and the results are transferred into the target manager by the calling thread, in the order of the functions.
+ * The resulting MDDs are thus the same as with a sequential build.
+ *
+ * @author Aurelien Naldi
+ */
+public class FunctionCompiler {
+
+	// maximal number of slices of a group built in parallel, independent of the machine for reproducibility
+	private static final int MAX_TASKS = 64;
+
+	private final MDDManager ddmanager;
+
+	/**
+	 * Create a compiler building MDDs in a given manager.
+	 *
+	 * @param ddmanager the MDDManager in which the MDDs will be stored.
+	 */
+	public FunctionCompiler(MDDManager ddmanager) {
+		this.ddmanager = ddmanager;
+	}
+
+	/**
+	 * Parse and build a group of logical functions.
+	 *
+	 * @param parser	the parser used for all functions
+	 * @param opFactory	the factory used to create operands
+	 * @param functions	the text form of the functions
+	 *
+	 * @return the MDD of each function, which must be freed by the caller
+	 * @throws RuntimeException if one of the functions can not be parsed
+	 */
+	public int[] compile(FunctionParser parser, OperandFactory opFactory, String[] functions) {
+		return getMDDs(parse(parser, opFactory, functions));
+	}
+
+	/**
+	 * Build the MDDs of a group of logical functions.
+	 *
+	 * @param functions	the roots of the functions
+	 *
+	 * @return the MDD of each function, which must be freed by the caller
+	 */
+	public int[] getMDDs(FunctionNode[] functions) {
+		Group group = new Group();
+		FunctionNode[] simplified = FunctionSimplifier.simplify(functions);
+		int[] roots = new int[functions.length];
+		for (int i=0 ; i<functions.length ; i++) {
+			roots[i] = group.add(simplified[i]);
+			group.uses[roots[i]]++;
+		}
+		return group.build(roots);
+	}
+
+	/**
+	 * Parse a group of logical functions, and build them in parallel.
+	 *
+	 * @param parser	the parser used for all functions
+	 * @param opFactory	the factory used to create operands
+	 * @param functions	the text form of the functions
+	 * @param executor	the executor running the parallel tasks
+	 *
+	 * @return the MDD of each function, which must be freed by the caller
+	 * @throws RuntimeException if one of the functions can not be parsed
+	 */
+	public int[] compile(FunctionParser parser, OperandFactory opFactory, String[] functions, ExecutorService executor) {
+		return getMDDs(parse(parser, opFactory, functions), executor);
+	}
+
+	private static FunctionNode[] parse(FunctionParser parser, OperandFactory opFactory, String[] functions) {
+		FunctionNode[] nodes = new FunctionNode[functions.length];
+		for (int i=0 ; i<functions.length ; i++) {
+			nodes[i] = parser.compile(opFactory, functions[i]);
+			if (nodes[i] == null) {
+				throw new RuntimeException("Invalid function: "+functions[i]);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Build the MDDs of a group of logical functions in parallel.
+	 * <p>
+	 * The group is split into slices of consecutive functions, each slice is built in a private,
+	 * unsynchronized store by a task of the executor. The calling thread then transfers the results
+	 * into the target manager, which is the only one modified by this thread.
+	 * The private stores use the location (heap or off-heap), the cancellation token and the node limit
+	 * of the target manager. Its memory limit is split between them.
+	 * The functions must not be modified during the build.
+	 *
+	 * @param functions	the roots of the functions
+	 * @param executor	the executor running the parallel tasks
+	 *
+	 * @return the MDD of each function, which must be freed by the caller
+	 */
+	public int[] getMDDs(FunctionNode[] functions, ExecutorService executor) {
+		// private stores use the same variables, in the same order
+		final MDDVariableFactory vbuilder = new MDDVariableFactory();
+		for (MDDVariable var: ddmanager.getAllVariables()) {
+			vbuilder.add(var.key, var.nbval);
+		}
+		final int nbleaves = ddmanager.getLeafCount();
+		final boolean offHeap = ddmanager.isOffHeap();
+		final CancellationToken token = ddmanager.getCancellationToken();
+		// set after a failure: slices which did not start yet are skipped
+		final AtomicBoolean failed = new AtomicBoolean(false);
+
+		int size = (functions.length + MAX_TASKS - 1) / MAX_TASKS;
+		int nbslices = size > 0 ? (functions.length + size - 1) / size : 0;
+		final int maxNodes = ddmanager.getMaxNodes();
+		final long maxBytes = ddmanager.getMaxBytes() > 0 ? Math.max(1, ddmanager.getMaxBytes() / nbslices) : 0;
+		List<Future<Slice>> tasks = new ArrayList<Future<Slice>>();
+		for (int start=0 ; start<functions.length ; start+=size) {
+			final FunctionNode[] slice = Arrays.copyOfRange(functions, start, Math.min(start+size, functions.length));
+			tasks.add(executor.submit(new Callable<Slice>() {
+				@Override
+				public Slice call() {
+					if (failed.get()) {
+						return null;
+					}
+					MDDManager store = MDDManagerFactory.getManager(vbuilder, nbleaves, false, offHeap);
+					boolean built = false;
+					try {
+						store.setLimits(maxNodes, maxBytes);
+						store.setCancellationToken(token);
+						Slice result = new Slice(store, new FunctionCompiler(store).getMDDs(slice));
+						built = true;
+						return result;
+					} finally {
+						if (!built) {
+							store.close();
+						}
+					}
+				}
+			}));
+		}
+
+		IndexMapper sameIndex = new IndexMapper() {
+			@Override
+			public int get(int idx) {
+				return idx;
+			}
+		};
+		int[] result = new int[functions.length];
+		int done = 0;
+		// number of slices taken over by this thread, their private stores are closed here
+		int taken = 0;
+		boolean success = false;
+		try {
+			while (taken < tasks.size()) {
+				Slice slice = getSlice(tasks.get(taken));
+				taken++;
+				try {
+					int[] mapped = new MDDMapper(slice.store, ddmanager, sameIndex).mapMDD(slice.roots);
+					System.arraycopy(mapped, 0, result, done, mapped.length);
+					done += mapped.length;
+				} finally {
+					slice.store.close();
+				}
+			}
+			success = true;
+		} finally {
+			if (!success) {
+				failed.set(true);
+				// the private stores of the other slices are closed, releasing their roots
+				for (int t=taken ; t<tasks.size() ; t++) {
+					discard(tasks.get(t));
+				}
+				for (int i=0 ; i<done ; i++) {
+					ddmanager.free(result[i]);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Slice getSlice(Future<Slice> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while building functions", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Wait for an unused slice and close its private store.
+	 */
+	private static void discard(Future<Slice> task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					Slice slice = task.get();
+					if (slice != null) {
+						slice.store.close();
+					}
+					return;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// the task closed its store
+					return;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * MDDs of a slice of a group, in a private store.
+	 */
+	private static class Slice {
+		final MDDManager store;
+		final int[] roots;
+
+		Slice(MDDManager store, int[] roots) {
+			this.store = store;
+			this.roots = roots;
+		}
+	}
+
+
+	/**
+	 * Distinct subexpressions of a group of functions.
+	 * Subexpressions are numbered after their arguments, allowing to build them in this order.
+	 */
+	private class Group {
+
+		// representative node, arguments and number of uses of each subexpression
+		final List<FunctionNode> nodes = new ArrayList<FunctionNode>();
+		final List<int[]> args = new ArrayList<int[]>();
+		int[] uses = new int[16];
+
+		final Map<FunctionNode, Integer> known = new IdentityHashMap<FunctionNode, Integer>();
+		final Map<Object, Integer> keys = new HashMap<Object, Integer>();
+
+		/**
+		 * Find or add a subexpression and its arguments.
+		 *
+		 * @param node
+		 * @return the number of this subexpression
+		 */
+		int add(FunctionNode node) {
+			Integer id = known.get(node);
+			if (id != null) {
+				return id;
+			}
+
+			int[] children = null;
+			Object key;
+			if (node instanceof AbstractOperator) {
+				FunctionNode[] nodeArgs = ((AbstractOperator)node).getChainArgs();
+				children = new int[nodeArgs.length];
+				List<Object> operatorKey = new ArrayList<Object>(nodeArgs.length+1);
+				operatorKey.add(node.getClass());
+				for (int i=0 ; i<nodeArgs.length ; i++) {
+					children[i] = add(nodeArgs[i]);
+					operatorKey.add(children[i]);
+				}
+				key = operatorKey;
+			} else if (node instanceof AbstractOperand) {
+				AbstractOperand operand = (AbstractOperand)node;
+				key = Arrays.asList(node.getClass(), operand.getMDDVariableKey(), operand.getRangeStart(), operand.getRangeEnd());
+			} else if (node instanceof ValueNode) {
+				key = Arrays.asList(node.getClass(), node.toString(false));
+			} else {
+				// unknown node type: no sharing
+				key = node;
+			}
+
+			id = keys.get(key);
+			if (id == null) {
+				id = nodes.size();
+				nodes.add(node);
+				args.add(children);
+				keys.put(key, id);
+				if (id == uses.length) {
+					uses = Arrays.copyOf(uses, 2*uses.length);
+				}
+				if (children != null) {
+					for (int c: children) {
+						uses[c]++;
+					}
+				}
+			}
+			known.put(node, id);
+			return id;
+		}
+
+		/**
+		 * Build all subexpressions, freeing each of them after its last use.
+		 *
+		 * @param roots	the subexpressions for which the MDD is returned
+		 * @return the MDD of each root
+		 */
+		int[] build(int[] roots) {
+			int[] mdds = new int[nodes.size()];
+			int[] result = new int[roots.length];
+			int built = 0;
+			int returned = 0;
+			try {
+				for ( ; built < mdds.length ; built++) {
+					mdds[built] = build(built, mdds);
+				}
+				for ( ; returned < roots.length ; returned++) {
+					result[returned] = ddmanager.use(mdds[roots[returned]]);
+					release(roots[returned], mdds);
+				}
+			} catch (RuntimeException e) {
+				for (int i=0 ; i<returned ; i++) {
+					ddmanager.free(result[i]);
+				}
+				for (int id=0 ; id<built ; id++) {
+					if (uses[id] > 0) {
+						ddmanager.free(mdds[id]);
+					}
+				}
+				throw e;
+			}
+			return result;
+		}
+
+		private int build(int id, int[] mdds) {
+			FunctionNode node = nodes.get(id);
+			int[] children = args.get(id);
+			if (children == null) {
+				return node.getMDD(ddmanager);
+			}
+
+			int[] childMDDs = new int[children.length];
+			for (int i=0 ; i<children.length ; i++) {
+				childMDDs[i] = mdds[children[i]];
+			}
+			int mdd = ((AbstractOperator)node).getMDD(ddmanager, childMDDs);
+			if (mdd < 0) {
+				// the operator can not reuse the MDDs of its arguments
+				mdd = node.getMDD(ddmanager);
+			}
+			for (int c: children) {
+				release(c, mdds);
+			}
+			return mdd;
+		}
+
+		private void release(int id, int[] mdds) {
+			uses[id]--;
+			if (uses[id] == 0) {
+				ddmanager.free(mdds[id]);
+			}
+		}
+	}
+}
@@ -1,13 +1,16 @@
 package org.colomoto.mddlib.logicalfunction;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 /**
  * Parser for logical functions.
  * <p>
- * This parser splits functions into operators and operands and
+ * This parser splits functions into operators and operands in a single pass and
  * constructs a tree view of the function.
  * <p>
  * It delegates the creation of operands to an <code>OperandFactory</code> 
@@ -18,8 +21,8 @@ import java.util.Stack;
 public class FunctionParser {
 	
 	final OperatorCollection operatorCollection;
-	final String operatorsAndParenthesis;
 	final List<String> operators;
+	final String symbolStarts;
 	
 	/**
 	 * Create a parser using the default set of operators.
@@ -35,8 +38,14 @@ public class FunctionParser {
 	 */
 	public FunctionParser(OperatorCollection operatorCollection) {
 		this.operatorCollection = operatorCollection;
-		operatorsAndParenthesis = operatorCollection.getRegex();
 		operators = operatorCollection.getOperators();
+		StringBuilder sb = new StringBuilder();
+		for (String symbol: operators) {
+			if (symbol.length() > 0) {
+				sb.append(symbol.charAt(0));
+			}
+		}
+		symbolStarts = sb.toString();
 	}
 	
 	/**
@@ -47,96 +56,130 @@ public class FunctionParser {
 	 * @return the root of the tree representation of this function.
 	 */
 	public FunctionNode compile(OperandFactory opFactory, String s) {
-	  int i, j, k;
-	  String elem;
-	  String[] split = s.split(operatorsAndParenthesis);
-	  List<String> operands = new ArrayList<String>();
-	  FunctionNode tbtn;
+		List<String> tokens = new ArrayList<String>();
+		BitSet isOperand = new BitSet();
+		List<String> operands = new ArrayList<String>();
+		tokenize(s, tokens, isOperand, operands);
+		if (!opFactory.verifOperandList(operands)) {
+			// the implementor is responsible to present auto-corrections... 
+			return null;
+		}
 
-	  for (i = 0; i < split.length; i++) {
-		  if (!split[i].equals("")) {
-			  operands.add(split[i]);
-		  }
-	  }
-	  if (!opFactory.verifOperandList(operands)) {
-		  // the implementor is responsible to present auto-corrections... 
-    	return null;
-	  }
+		// each operand is created once, even if it is used several times
+		Map<String, FunctionNode> operandNodes = new HashMap<String, FunctionNode>();
+		Stack<FunctionNode> operandStack = new Stack<FunctionNode>();
+		Stack<String> operatorStack = new Stack<String>();
+		FunctionNode tbtn;
+		for (int t=0 ; t<tokens.size() ; t++) {
+			String elem = tokens.get(t);
+			if (isOperand.get(t)) {
+				FunctionNode operand = operandNodes.get(elem);
+				if (operand == null) {
+					try {
+						operand = opFactory.createOperand(elem);
+					} catch (Exception e) {
+						return null;
+					}
+					operandNodes.put(elem, operand);
+				}
+				operandStack.push(operand);
+			} else if (elem.equals("(")) {
+				operatorStack.push(elem);
+			} else if (elem.equals(")")) {
+				while (!operatorStack.peek().equals("(")) {
+					tbtn = operatorCollection.createOperator(operatorStack.pop(), operandStack);
+					if (tbtn != null) {
+						operandStack.push(tbtn);
+					}
+				}
+				operatorStack.pop();
+			} else {
+				int j = operatorCollection.getPriority(elem);
+				while (!operatorStack.empty()) {
+					int k = operatorCollection.getPriority(operatorStack.peek());
+					if (k < j) {
+						break;
+					}
+					tbtn = operatorCollection.createOperator(operatorStack.pop(), operandStack);
+					if (tbtn != null) {
+						operandStack.push(tbtn);
+					}
+				}
+				operatorStack.push(elem);
+			}
+		}
 
-	  i = 0;
-	  Stack<FunctionNode> operandStack = new Stack<FunctionNode>();
-	  Stack<String> operatorStack = new Stack<String>();
-	  while (i != s.length()) {
-		  elem = readElement(operators, operands, s, i);
-		  if (elem == null) {
-			  return null;
-		  } else if (operands.contains(elem)) {
-			  try {
-				operandStack.push(opFactory.createOperand(elem));
-			} catch (Exception e) {
+		while (!operatorStack.empty()) {
+			tbtn = operatorCollection.createOperator(operatorStack.pop(), operandStack);
+			if (tbtn != null) {
+				operandStack.push(tbtn);
+			} else {
 				return null;
 			}
-		  } else if (elem.equals("(")) {
-			  operatorStack.push(elem);
-		  } else if (elem.equals(")")) {
-			  while (!((String) operatorStack.peek()).equals("(")) {
-				  tbtn = operatorCollection.createOperator(operatorStack.pop(), operandStack);
-				  if (tbtn != null) {
-					  operandStack.push(tbtn);
-				  }
-			  }
-			  operatorStack.pop();
-		  } else if (operators.contains(elem)) {
-			  j = operatorCollection.getPriority(elem);
-			  while (!operatorStack.empty()) {
-				  k = operatorCollection.getPriority(operatorStack.peek());
-				  if (k < j) {
-					  break;
-				  }
-				  tbtn = operatorCollection.createOperator(operatorStack.pop(), operandStack);
-				  if (tbtn != null) {
-					  operandStack.push(tbtn);
-				  }
-			  }
-			  operatorStack.push(elem);
-		  }
-		  i = elem.length() + s.indexOf(elem, i);
-	  }
-	  
-	  while (!operatorStack.empty()) {
-		  tbtn = operatorCollection.createOperator(operatorStack.pop(), operandStack);
-		  if (tbtn != null) {
-			  operandStack.push(tbtn);
-		  } else {
-			  return null;
-		  }
-	  }
-	  FunctionNode root = operandStack.pop();
-	  if (!operandStack.isEmpty()) {
-		  return null;
-	  }
-	  return root;
+		}
+		FunctionNode root = operandStack.pop();
+		if (!operandStack.isEmpty()) {
+			return null;
+		}
+		return root;
 	}
-  
-	private String readElement(List<String> operators, List<String> operands, String s, int i) {
-  		String s2 = s.substring(i).trim(), ret = "";
 
-	    for (String tmp: operands) {
-	    	if (s2.startsWith(tmp) && tmp.length() > ret.length()) {
-	    		ret = tmp;
-	    	}
-	    }
-	    if (ret.equals("")) {
-	    	for (String tmp: operators ) {
-	    		if (s2.startsWith(tmp)) {
-	    			ret = tmp;
-	    			break;
-	    		}
-	    	}
-	    }
-	    if (ret.equals("")) {
-	    	return null;
-	    }
-	    return ret;
-  	}
+	/**
+	 * Split a function into operators, parenthesis and operands in a single pass.
+	 * Operands are the longest sequences of characters which do not contain
+	 * white spaces or the symbol of an operator.
+	 * 
+	 * @param s				the text form of the function
+	 * @param tokens		filled with the successive operators and operands
+	 * @param isOperand		marks the positions of operands in the list of tokens
+	 * @param operands		filled with the successive operands
+	 */
+	private void tokenize(String s, List<String> tokens, BitSet isOperand, List<String> operands) {
+		int length = s.length();
+		int i = 0;
+		while (i < length) {
+			char c = s.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+
+			String symbol = readSymbol(s, i);
+			if (symbol != null) {
+				tokens.add(symbol);
+				i += symbol.length();
+				continue;
+			}
+
+			int end = i+1;
+			while (end < length && !Character.isWhitespace(s.charAt(end)) && readSymbol(s, end) == null) {
+				end++;
+			}
+			String operand = s.substring(i, end);
+			isOperand.set(tokens.size());
+			tokens.add(operand);
+			operands.add(operand);
+			i = end;
+		}
+	}
+
+	/**
+	 * Find the operator or parenthesis starting at a given position.
+	 * 
+	 * @param s	the text form of the function
+	 * @param i	the position
+	 * @return the longest symbol starting at this position, or null if none
+	 */
+	private String readSymbol(String s, int i) {
+		if (symbolStarts.indexOf(s.charAt(i)) < 0) {
+			return null;
+		}
+		String ret = null;
+		for (String symbol: operators) {
+			if (s.startsWith(symbol, i) && (ret == null || symbol.length() > ret.length())) {
+				ret = symbol;
+			}
+		}
+		return ret;
+	}
 }
@@ -0,0 +1,322 @@
+package org.colomoto.mddlib.logicalfunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+import org.colomoto.mddlib.logicalfunction.operators.AbstractBinaryOperator;
+import org.colomoto.mddlib.logicalfunction.operators.AbstractOperator;
+import org.colomoto.mddlib.logicalfunction.operators.AbstractUnaryOperator;
+import org.colomoto.mddlib.logicalfunction.operators.AndOperatorFactory;
+import org.colomoto.mddlib.logicalfunction.operators.NotOperatorFactory;
+import org.colomoto.mddlib.logicalfunction.operators.OrOperatorFactory;
+
+/**
+ * Rewrite logical functions into simpler equivalent functions, reducing the number of
+ * operations needed to build their MDD.
+ * <p>
+ * The following rewrites are applied:
+ * <ul>
+ *  <li>double negations are removed: <code>!!a</code> becomes <code>a</code>,</li>
+ *  <li>negations are pushed down to the operands (De Morgan laws): <code>!(a &amp; b)</code> becomes <code>!a | !b</code>,</li>
+ *  <li>constants are folded: <code>a &amp; 0</code> becomes <code>0</code> and <code>a &amp; 1</code> becomes <code>a</code>,</li>
+ *  <li>duplicated arguments are removed: <code>a &amp; b &amp; a</code> becomes <code>a &amp; b</code>,</li>
+ *  <li>absorbed arguments are removed: <code>a &amp; (a | b)</code> becomes <code>a</code>,</li>
+ *  <li>complementary arguments are detected: <code>a &amp; !a</code> becomes <code>0</code>.</li>
+ * </ul>
+ * The same rules apply to the "or" operator.
+ * Apart from double negations, these rewrites rely on Boolean semantics: they are only applied to subexpressions
+ * built from operands, the values 0 and 1 and the "and", "or" and "not" operators. Other subexpressions are kept.
+ * <p>
+ * The original function is not modified, unchanged subexpressions are shared with the result.
+ *
+ * @author Aurelien Naldi
+ */
+public class FunctionSimplifier {
+
+	// memoized Boolean status and structural identifier of nodes
+	private final Map<FunctionNode, Boolean> booleans = new IdentityHashMap<FunctionNode, Boolean>();
+	private final Map<FunctionNode, Integer> ids = new IdentityHashMap<FunctionNode, Integer>();
+	private final Map<Object, Integer> keys = new HashMap<Object, Integer>();
+
+	/**
+	 * Simplify a logical function.
+	 *
+	 * @param function	the root of the function
+	 * @return the root of an equivalent, simplified function
+	 */
+	public static FunctionNode simplify(FunctionNode function) {
+		return new FunctionSimplifier().rewrite(function);
+	}
+
+	/**
+	 * Simplify a group of logical functions.
+	 * Functions simplified together can share their identical subexpressions.
+	 *
+	 * @param functions	the roots of the functions
+	 * @return the roots of the simplified functions
+	 */
+	public static FunctionNode[] simplify(FunctionNode[] functions) {
+		FunctionSimplifier simplifier = new FunctionSimplifier();
+		FunctionNode[] result = new FunctionNode[functions.length];
+		for (int i=0 ; i<functions.length ; i++) {
+			result[i] = simplifier.rewrite(functions[i]);
+		}
+		return result;
+	}
+
+	private FunctionSimplifier() {
+	}
+
+	private FunctionNode rewrite(FunctionNode node) {
+		if (isNot(node)) {
+			return negate(getArg(node));
+		}
+		if (isAnd(node) || isOr(node)) {
+			boolean and = isAnd(node);
+			List<FunctionNode> args = new ArrayList<FunctionNode>();
+			for (FunctionNode arg: getChain(node, and)) {
+				args.add(rewrite(arg));
+			}
+			return combine(and, args);
+		}
+		return node;
+	}
+
+	/**
+	 * Build a simplified negation of a function.
+	 */
+	private FunctionNode negate(FunctionNode node) {
+		if (isNot(node)) {
+			return rewrite(getArg(node));
+		}
+		if (node instanceof ValueNode) {
+			return negateValue((ValueNode)node);
+		}
+		if ((isAnd(node) || isOr(node)) && isBoolean(node)) {
+			// De Morgan
+			boolean and = isAnd(node);
+			List<FunctionNode> args = new ArrayList<FunctionNode>();
+			for (FunctionNode arg: getChain(node, and)) {
+				args.add(negate(arg));
+			}
+			return combine(!and, args);
+		}
+
+		FunctionNode simplified = rewrite(node);
+		if (isNot(simplified)) {
+			return getArg(simplified);
+		}
+		if (simplified instanceof ValueNode) {
+			return negateValue((ValueNode)simplified);
+		}
+		return NotOperatorFactory.FACTORY.getNode(simplified);
+	}
+
+	/**
+	 * The "not" operator flips the values 0 and 1, and preserves other values.
+	 */
+	private FunctionNode negateValue(ValueNode node) {
+		switch (node.getValue()) {
+		case 0:
+			return ValueNode.TRUE;
+		case 1:
+			return ValueNode.FALSE;
+		default:
+			return node;
+		}
+	}
+
+	/**
+	 * Combine simplified arguments with a "and" or "or" operator.
+	 *
+	 * @param and	true for a "and", false for a "or"
+	 * @param args	the simplified arguments
+	 * @return the simplified combination
+	 */
+	private FunctionNode combine(boolean and, List<FunctionNode> args) {
+		// simplified arguments may be chains of the same operator
+		List<FunctionNode> flat = new ArrayList<FunctionNode>();
+		boolean bool = true;
+		for (FunctionNode arg: args) {
+			if (and ? isAnd(arg) : isOr(arg)) {
+				flat.addAll(getChain(arg, and));
+			} else {
+				flat.add(arg);
+			}
+			bool &= isBoolean(arg);
+		}
+		if (!bool) {
+			return build(and, flat);
+		}
+
+		// the absorbing value of the operator
+		ValueNode absorbing = and ? ValueNode.FALSE : ValueNode.TRUE;
+
+		// remove constants and duplicates
+		List<FunctionNode> kept = new ArrayList<FunctionNode>();
+		Set<Integer> seen = new HashSet<Integer>();
+		for (FunctionNode arg: flat) {
+			if (arg instanceof ValueNode) {
+				if (((ValueNode)arg).getValue() == absorbing.getValue()) {
+					return absorbing;
+				}
+				continue;
+			}
+			if (seen.add(getId(arg))) {
+				kept.add(arg);
+			}
+		}
+
+		// complementary arguments
+		for (FunctionNode arg: kept) {
+			if (isNot(arg) && seen.contains(getId(getArg(arg)))) {
+				return absorbing;
+			}
+		}
+
+		// absorption: drop arguments which are combinations containing another argument
+		List<FunctionNode> result = new ArrayList<FunctionNode>();
+		for (FunctionNode arg: kept) {
+			boolean absorbed = false;
+			if (and ? isOr(arg) : isAnd(arg)) {
+				for (FunctionNode sub: getChain(arg, !and)) {
+					if (seen.contains(getId(sub))) {
+						absorbed = true;
+						break;
+					}
+				}
+			}
+			if (!absorbed) {
+				result.add(arg);
+			}
+		}
+
+		return build(and, result);
+	}
+
+	/**
+	 * Build a chain of "and" or "or" operators.
+	 */
+	private FunctionNode build(boolean and, List<FunctionNode> args) {
+		if (args.isEmpty()) {
+			return and ? ValueNode.TRUE : ValueNode.FALSE;
+		}
+		FunctionNode result = args.get(0);
+		for (int i=1 ; i<args.size() ; i++) {
+			if (and) {
+				result = AndOperatorFactory.FACTORY.getNode(result, args.get(i));
+			} else {
+				result = OrOperatorFactory.FACTORY.getNode(result, args.get(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Collect the arguments of a chain of "and" or "or" operators, from left to right.
+	 */
+	private List<FunctionNode> getChain(FunctionNode node, boolean and) {
+		List<FunctionNode> args = new ArrayList<FunctionNode>();
+		Stack<FunctionNode> pending = new Stack<FunctionNode>();
+		pending.push(node);
+		while (!pending.isEmpty()) {
+			FunctionNode current = pending.pop();
+			if (and ? isAnd(current) : isOr(current)) {
+				FunctionNode[] currentArgs = ((AbstractOperator)current).getArgs();
+				pending.push(currentArgs[1]);
+				pending.push(currentArgs[0]);
+			} else {
+				args.add(current);
+			}
+		}
+		return args;
+	}
+
+	/**
+	 * Test if a subexpression only uses operands, the values 0 and 1 and the "and", "or" and "not" operators.
+	 */
+	private boolean isBoolean(FunctionNode node) {
+		Boolean b = booleans.get(node);
+		if (b != null) {
+			return b;
+		}
+
+		boolean result;
+		if (node instanceof AbstractOperand) {
+			result = true;
+		} else if (node instanceof ValueNode) {
+			result = ((ValueNode)node).getValue() < 2;
+		} else if (isNot(node) || isAnd(node) || isOr(node)) {
+			result = true;
+			for (FunctionNode arg: ((AbstractOperator)node).getArgs()) {
+				if (!isBoolean(arg)) {
+					result = false;
+					break;
+				}
+			}
+		} else {
+			result = false;
+		}
+		booleans.put(node, result);
+		return result;
+	}
+
+	/**
+	 * Get an identifier shared by all structurally identical subexpressions.
+	 */
+	private int getId(FunctionNode node) {
+		Integer id = ids.get(node);
+		if (id != null) {
+			return id;
+		}
+
+		Object key;
+		if (node instanceof AbstractOperator) {
+			FunctionNode[] args = ((AbstractOperator)node).getArgs();
+			List<Object> operatorKey = new ArrayList<Object>(args.length+1);
+			operatorKey.add(((AbstractOperator)node).getSymbol());
+			for (FunctionNode arg: args) {
+				operatorKey.add(getId(arg));
+			}
+			key = operatorKey;
+		} else if (node instanceof AbstractOperand) {
+			AbstractOperand operand = (AbstractOperand)node;
+			key = Arrays.asList(node.getClass(), operand.getMDDVariableKey(), operand.getRangeStart(), operand.getRangeEnd());
+		} else if (node instanceof ValueNode) {
+			key = Arrays.asList(node.getClass(), ((ValueNode)node).getValue());
+		} else {
+			key = node;
+		}
+
+		id = keys.get(key);
+		if (id == null) {
+			id = keys.size();
+			keys.put(key, id);
+		}
+		ids.put(node, id);
+		return id;
+	}
+
+	private static boolean isNot(FunctionNode node) {
+		return node instanceof AbstractUnaryOperator && NotOperatorFactory.SYMBOL.equals(((AbstractOperator)node).getSymbol());
+	}
+
+	private static boolean isAnd(FunctionNode node) {
+		return node instanceof AbstractBinaryOperator && AndOperatorFactory.SYMBOL.equals(((AbstractOperator)node).getSymbol());
+	}
+
+	private static boolean isOr(FunctionNode node) {
+		return node instanceof AbstractBinaryOperator && OrOperatorFactory.SYMBOL.equals(((AbstractOperator)node).getSymbol());
+	}
+
+	private static FunctionNode getArg(FunctionNode node) {
+		return ((AbstractOperator)node).getArgs()[0];
+	}
+}
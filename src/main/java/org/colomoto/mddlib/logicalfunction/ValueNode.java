@@ -7,8 +7,8 @@ import org.colomoto.mddlib.MDDManager;
  */
 public class ValueNode implements FunctionNode {
 
-    public final static ValueNode TRUE = new ValueNode(1);
-    public final static ValueNode FALSE = new ValueNode(0);
+    public final static ValueNode TRUE;
+    public final static ValueNode FALSE;
 
     public final ValueNode getNode(int value) {
         if (value < 0) {
@@ -26,8 +26,10 @@ public class ValueNode implements FunctionNode {
     static {
         VALUES = new ValueNode[NBVALUES];
         for (int i=0 ; i<NBVALUES ; i++) {
-            VALUES[i] = new ValueNode(1);
+            VALUES[i] = new ValueNode(i);
         }
+        FALSE = VALUES[0];
+        TRUE = VALUES[1];
     }
 
     private final int value;
@@ -36,11 +38,23 @@ public class ValueNode implements FunctionNode {
         this.value = value;
     }
 
+    /**
+     * @return the value of this node
+     */
+    public int getValue() {
+        return value;
+    }
+
     @Override
     public String toString(boolean par) {
         return ""+value;
     }
 
+    @Override
+    public String toString() {
+        return toString(false);
+    }
+
     @Override
     public boolean isLeaf() {
         return true;
@@ -1,5 +1,7 @@
 package org.colomoto.mddlib.logicalfunction.operators;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 import org.colomoto.mddlib.MDDManager;
@@ -67,13 +69,75 @@ public abstract class AbstractBinaryOperator extends AbstractOperator {
 	
 	@Override
 	public int getMDD(MDDManager ddmanager) {
-		// TODO: use group merging if the children are binary operators of the same type
-		int l = leftArg.getMDD(ddmanager);
-		int r = rightArg.getMDD(ddmanager);
-		int ret = getMDDOperation().combine(ddmanager, l, r);
-		ddmanager.free(l);
-		ddmanager.free(r);
-		return ret;
+		if (!isAssociative()) {
+			int l = leftArg.getMDD(ddmanager);
+			int r = rightArg.getMDD(ddmanager);
+			int ret = getMDDOperation().combine(ddmanager, l, r);
+			ddmanager.free(l);
+			ddmanager.free(r);
+			return ret;
+		}
+
+		// merge the whole chain of this operator in a single operation
+		FunctionNode[] args = getChainArgs();
+		int[] mdds = new int[args.length];
+		int done = 0;
+		try {
+			for ( ; done<mdds.length ; done++) {
+				mdds[done] = args[done].getMDD(ddmanager);
+			}
+			return getMDD(ddmanager, mdds);
+		} finally {
+			for (int i=0 ; i<done ; i++) {
+				ddmanager.free(mdds[i]);
+			}
+		}
+	}
+
+	/**
+	 * Collect the arguments of the chain of operations rooted here, from left to right:
+	 * nested operations using the same associative operator are skipped.
+	 * The chain is walked without recursion, to support very long chains.
+	 * 
+	 * @return the arguments of the chain, or the two arguments of a non-associative operator
+	 */
+	@Override
+	public FunctionNode[] getChainArgs() {
+		if (!isAssociative()) {
+			return getArgs();
+		}
+		List<FunctionNode> args = new ArrayList<FunctionNode>();
+		MDDOperator operation = getMDDOperation();
+		Stack<FunctionNode> pending = new Stack<FunctionNode>();
+		pending.push(this);
+		while (!pending.isEmpty()) {
+			FunctionNode node = pending.pop();
+			if (node instanceof AbstractBinaryOperator && ((AbstractBinaryOperator)node).getMDDOperation() == operation) {
+				AbstractBinaryOperator op = (AbstractBinaryOperator)node;
+				pending.push(op.rightArg);
+				pending.push(op.leftArg);
+			} else {
+				args.add(node);
+			}
+		}
+		return args.toArray(new FunctionNode[args.size()]);
+	}
+
+	/**
+	 * Associative operators can merge chains of the same operation in a single call to the MDD operator.
+	 * 
+	 * @return true if the operation is associative
+	 */
+	protected boolean isAssociative() {
+		return false;
+	}
+
+	@Override
+	public int getMDD(MDDManager ddmanager, int[] args) {
+		if (args.length == 2) {
+			return getMDDOperation().combine(ddmanager, args[0], args[1]);
+		}
+		return getMDDOperation().combine(ddmanager, args);
 	}
 
 	abstract protected MDDOperator getMDDOperation();
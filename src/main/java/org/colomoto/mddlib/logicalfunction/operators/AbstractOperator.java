@@ -32,4 +32,27 @@ public abstract class AbstractOperator implements FunctionNode {
   public abstract String getSymbol();
   public abstract int getNbArgs();
   public abstract FunctionNode[] getArgs();
+
+  /**
+   * Get the arguments merged by a single operation when building the MDD of this operator.
+   * By default, these are the arguments given by <code>getArgs()</code>.
+   * 
+   * @return the arguments of the operation
+   */
+  public FunctionNode[] getChainArgs() {
+    return getArgs();
+  }
+
+  /**
+   * Construct the MDD of this operator from the MDDs of its arguments.
+   * This allows to reuse the MDDs of shared arguments (see <code>FunctionCompiler</code>).
+   * 
+   * @param ddmanager the MDDManager in which the MDD will be stored.
+   * @param args the MDDs of the arguments, in the order given by <code>getChainArgs()</code>. They are not freed.
+   * 
+   * @return the index of the corresponding MDD root, or -1 if this operator does not support it.
+   */
+  public int getMDD(MDDManager ddmanager, int[] args) {
+    return -1;
+  }
 }
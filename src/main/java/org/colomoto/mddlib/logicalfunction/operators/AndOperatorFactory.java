@@ -72,4 +72,9 @@ class AndOperator extends AbstractBinaryOperator {
 	protected MDDOperator getMDDOperation() {
 		return MDDBaseOperators.AND;
 	}
+
+	@Override
+	protected boolean isAssociative() {
+		return true;
+	}
 }
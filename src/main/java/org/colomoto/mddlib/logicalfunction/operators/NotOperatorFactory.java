@@ -74,4 +74,9 @@ class NotOperator extends AbstractUnaryOperator {
 		ddmanager.free(mdd);
 		return ret;
 	}
+
+	@Override
+	public int getMDD(MDDManager ddmanager, int[] args) {
+		return ddmanager.not(args[0]);
+	}
 }
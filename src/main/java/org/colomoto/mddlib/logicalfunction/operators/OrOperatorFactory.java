@@ -72,4 +72,9 @@ class OrOperator extends AbstractBinaryOperator {
 	protected MDDOperator getMDDOperation() {
 		return MDDBaseOperators.OR;
 	}
+
+	@Override
+	protected boolean isAssociative() {
+		return true;
+	}
 }
@@ -1,9 +1,14 @@
 package org.colomoto.mddlib.operators;
 
+import java.util.concurrent.atomic.LongAdder;
+
+import org.colomoto.mddlib.CancellationToken;
+import org.colomoto.mddlib.MDDLimitException;
 import org.colomoto.mddlib.MDDManager;
 import org.colomoto.mddlib.MDDOperator;
 import org.colomoto.mddlib.MDDVariable;
 import org.colomoto.mddlib.NodeRelation;
+import org.colomoto.mddlib.internal.MDDEvents;
 
 /**
  * Common (boring) part of a MDDOperator implementation.
@@ -15,6 +20,13 @@ import org.colomoto.mddlib.NodeRelation;
  * To properly support multiple merge, implementors are encouraged to override
  * <code>multiple_leaves(MDDManager, int[])</code>
  * and <code>recurse_multiple(MDDManager, int[], int, int)</code>.
+ * The fallback is a linear series of two-nodes merges. Associative operators can declare it
+ * in their constructor: their fallback merges pairs of nodes following a balanced tree instead
+ * (see {@link BalancedReduction}).
+ * <p>
+ * Operators count the recursive steps performed by these helpers, which gives an estimate of
+ * the work they performed. Operators do not keep a cache of computed results: repeated sub-results
+ * are found in the unique table of the store (see <code>MDDManager.getStatistics()</code>).
  * 
  * @see MDDBaseOperators
  * @see AbstractFlexibleOperator
@@ -24,6 +36,19 @@ import org.colomoto.mddlib.NodeRelation;
 abstract public class AbstractOperator implements MDDOperator {
 
 	private final boolean multipleMerge;
+	private final boolean associative;
+
+	// operators are shared between threads and managers: use concurrent counters
+	private final LongAdder recursions = new LongAdder();
+	private final LongAdder multipleMerges = new LongAdder();
+
+	// outermost operation of each thread, only tracked while events are recorded
+	private static final ThreadLocal<boolean[]> IN_OPERATION = new ThreadLocal<boolean[]>() {
+		@Override
+		protected boolean[] initialValue() {
+			return new boolean[1];
+		}
+	};
 	
 	/**
 	 * Create an operator which does not support multiple merge.
@@ -38,7 +63,47 @@ abstract public class AbstractOperator implements MDDOperator {
 	 * @param multipleMerge		if true, optimised multiple merge will be used instead of the fallback
 	 */
 	public AbstractOperator(boolean multipleMerge) {
+		this(multipleMerge, false);
+	}
+
+	/**
+	 * Create an operator.
+	 * 
+	 * @param multipleMerge		if true, optimised multiple merge will be used instead of the fallback
+	 * @param associative		if true, the fallback merges pairs of nodes following a balanced tree
+	 */
+	public AbstractOperator(boolean multipleMerge, boolean associative) {
 		this.multipleMerge = multipleMerge;
+		this.associative = associative;
+	}
+
+	/**
+	 * @return true if this operator was declared as associative
+	 */
+	public boolean isAssociative() {
+		return associative;
+	}
+
+	/**
+	 * @return the number of recursive steps performed by this operator on non-leaf nodes
+	 */
+	public long getRecursionCount() {
+		return recursions.sum();
+	}
+
+	/**
+	 * @return the number of merges of more than two nodes performed by this operator
+	 */
+	public long getMultipleMergeCount() {
+		return multipleMerges.sum();
+	}
+
+	/**
+	 * Reset the counters of this operator.
+	 */
+	public void resetStatistics() {
+		recursions.reset();
+		multipleMerges.reset();
 	}
 
 	/**
@@ -53,50 +118,105 @@ abstract public class AbstractOperator implements MDDOperator {
 	 * @return the resulting node index
 	 */
 	public int recurse(MDDManager ddmanager, NodeRelation status, int first, int other) {
+		recursions.increment();
+		Object event = beginOperation();
+		if (event == null) {
+			return recurse_children(ddmanager, status, first, other);
+		}
+		try {
+			return recurse_children(ddmanager, status, first, other);
+		} finally {
+			endOperation(event);
+		}
+	}
+
+	/**
+	 * Start an operation event if no operation is running in the current thread.
+	 * Nested steps and operations are covered by the event of the outermost operation.
+	 *
+	 * @return the event, or null for nested operations and when no recording is running
+	 */
+	private static Object beginOperation() {
+		if (!MDDEvents.isEnabled()) {
+			return null;
+		}
+		boolean[] active = IN_OPERATION.get();
+		if (active[0]) {
+			return null;
+		}
+		Object event = MDDEvents.beginOperation();
+		active[0] = event != null;
+		return event;
+	}
+
+	private void endOperation(Object event) {
+		IN_OPERATION.get()[0] = false;
+		MDDEvents.endOperation(event, getClass().getSimpleName());
+	}
+
+	/**
+	 * Combine the children of the nodes, for the <code>recurse</code> helper.
+	 */
+	private int recurse_children(MDDManager ddmanager, NodeRelation status, int first, int other) {
+		MDDVariable var;
+		boolean splitFirst = true, splitOther = true;
 		switch (status) {
 		case LN:
 		case NNf:
-			MDDVariable var = ddmanager.getNodeVariable(other);
-			if (var.nbval == 2) {
-				int l = combine(ddmanager, first, ddmanager.getChild(other,0));
-				int r = combine(ddmanager, first, ddmanager.getChild(other,1));
-				return var.getNodeFree(l, r);
-			} else {
-				int[] children = new int[var.nbval];
-				for (int i=0 ; i<children.length ; i++) {
-					children[i] = combine(ddmanager, first, ddmanager.getChild(other, i));
-				}
-				return var.getNodeFree(children);
-			}
+			var = ddmanager.getNodeVariable(other);
+			splitFirst = false;
+			break;
 		case NL:
 		case NNn:
 			var = ddmanager.getNodeVariable(first);
-			if (var.nbval == 2) {
-				int l = combine(ddmanager, ddmanager.getChild(first,0), other);
-				int r = combine(ddmanager, ddmanager.getChild(first,1), other);
-				return var.getNodeFree(l, r);
-			} else {
-				int[] children = new int[var.nbval];
-				for (int i=0 ; i<children.length ; i++) {
-					children[i] = combine(ddmanager, ddmanager.getChild(first,i), other);
-				}
-				return var.getNodeFree(children);
-			}
+			splitOther = false;
+			break;
 		case NN:
 			var = ddmanager.getNodeVariable(first);
-			if (var.nbval == 2) {
-				int l = combine(ddmanager, ddmanager.getChild(first,0), ddmanager.getChild(other,0));
-				int r = combine(ddmanager, ddmanager.getChild(first,1), ddmanager.getChild(other,1));
-				return var.getNodeFree(l, r);
-			} else {
-				int[] children = new int[var.nbval];
-				for (int i=0 ; i<children.length ; i++) {
-					children[i] = combine(ddmanager, ddmanager.getChild(first,i), ddmanager.getChild(other,i));
-				}
-				return var.getNodeFree(children);
+			break;
+		default:
+			return -1;
+		}
+
+		checkCancellation(ddmanager);
+		int[] children = new int[var.nbval];
+		int done = 0;
+		try {
+			for ( ; done<children.length ; done++) {
+				int f = splitFirst ? ddmanager.getChild(first, done) : first;
+				int o = splitOther ? ddmanager.getChild(other, done) : other;
+				children[done] = combine(ddmanager, f, o);
 			}
+			return var.getNodeFree(children);
+		} catch (MDDLimitException e) {
+			release(ddmanager, children, done);
+			throw e;
+		}
+	}
+
+	/**
+	 * Stop the operation if the cancellation token of the manager was cancelled.
+	 * 
+	 * @param ddmanager
+	 */
+	protected static void checkCancellation(MDDManager ddmanager) {
+		CancellationToken token = ddmanager.getCancellationToken();
+		if (token != null) {
+			token.check();
+		}
+	}
+
+	/**
+	 * Release the partial result of an interrupted recursion.
+	 * 
+	 * @param ddmanager
+	 * @param children	the children computed so far
+	 * @param done		the number of computed children
+	 */
+	protected static void release(MDDManager ddmanager, int[] children, int done) {
+		for (int i=0 ; i<done ; i++) {
+			ddmanager.free(children[i]);
 		}
-		return -1;
 	}
 
 	/**
@@ -111,6 +231,18 @@ abstract public class AbstractOperator implements MDDOperator {
 	 */
 	@Override
 	public int combine(MDDManager ddmanager, int[] nodes) {
+		Object event = beginOperation();
+		if (event == null) {
+			return combine_nodes(ddmanager, nodes);
+		}
+		try {
+			return combine_nodes(ddmanager, nodes);
+		} finally {
+			endOperation(event);
+		}
+	}
+
+	private int combine_nodes(MDDManager ddmanager, int[] nodes) {
 		switch (nodes.length) {
 			case 0:
 				throw new RuntimeException("Need at least one node to merge");
@@ -120,17 +252,38 @@ abstract public class AbstractOperator implements MDDOperator {
 				return combine(ddmanager, nodes[0], nodes[1]);
 		}
 		
-		int result = nodes[0];
+		multipleMerges.increment();
 		if (multipleMerge) {
 			return combine(ddmanager, nodes, 0);
 		}
 		
 		// fallback to a set of simple merges if multiple merge is not properly supported
-		int oldresult = 0;
-		for (int i=1 ; i<nodes.length ; i++) {
-			ddmanager.free(oldresult);
-			result = combine(ddmanager, result, nodes[i]);
-			oldresult = result;
+		return fold(ddmanager, nodes);
+	}
+
+	/**
+	 * Combine a list of nodes by a series of two-nodes merges.
+	 * The merges follow a balanced tree for associative operators, and the order of the list otherwise.
+	 * 
+	 * @param ddmanager
+	 * @param nodes
+	 * 
+	 * @return the resulting node index
+	 */
+	private int fold(MDDManager ddmanager, int[] nodes) {
+		if (associative) {
+			return BalancedReduction.reduce(ddmanager, this, nodes);
+		}
+		int result = ddmanager.use(nodes[0]);
+		try {
+			for (int i=1 ; i<nodes.length ; i++) {
+				int next = combine(ddmanager, result, nodes[i]);
+				ddmanager.free(result);
+				result = next;
+			}
+		} catch (MDDLimitException e) {
+			ddmanager.free(result);
+			throw e;
 		}
 		return result;
 	}
@@ -152,13 +305,7 @@ abstract public class AbstractOperator implements MDDOperator {
 		}
 		
 		// fallback to a set of simple merges if this method is not provided by the operator
-		int result = leaves[0], oldresult = 0;
-		for (int i=1 ; i<leaves.length ; i++) {
-			ddmanager.free(oldresult);
-			result = combine(ddmanager, result, leaves[i]);
-			oldresult = result;
-		}
-		return result;
+		return fold(ddmanager, leaves);
 	}
 	
 	/**
@@ -188,6 +335,7 @@ abstract public class AbstractOperator implements MDDOperator {
 		if (leafcount == nodes.length) {
 			return multiple_leaves(ddmanager, nodes);
 		}
+		recursions.increment();
 		return recurse_multiple(ddmanager, nodes, leafcount, bestVar);
 	}
 
@@ -220,40 +368,27 @@ abstract public class AbstractOperator implements MDDOperator {
 	 * @return the resulting node index
 	 */
 	protected int recurse_multiple(MDDManager ddmanager, int[] nodes, int leafcount, MDDVariable bestVar) {
-		if (bestVar.nbval == 2) {
-			int lchild, rchild;
-			int[] lnodes = new int[nodes.length], rnodes = new int[nodes.length];
-			for (int i=0 ; i<leafcount ; i++) {
-				lnodes[i] = rnodes[i] = nodes[i];
-			}
-			for (int i=leafcount ; i<nodes.length ; i++) {
-				int node = nodes[i];
-				if (ddmanager.getNodeVariable(node) == bestVar) {
-					lnodes[i] = ddmanager.getChild(node, 0);
-					rnodes[i] = ddmanager.getChild(node, 1);
-				} else {
-					lnodes[i] = rnodes[i] = node;
-				}
-			}
-			lchild = combine(ddmanager, lnodes, leafcount);
-			rchild = combine(ddmanager, rnodes, leafcount);
-			return bestVar.getNodeFree(lchild, rchild);
-		} else {
-			int[] children = new int[bestVar.nbval];
-			int[] nextnodes = new int[nodes.length];
-			for (int v=0 ; v<children.length ; v++) {
+		checkCancellation(ddmanager);
+		int[] children = new int[bestVar.nbval];
+		int[] nextnodes = new int[nodes.length];
+		int done = 0;
+		try {
+			for ( ; done<children.length ; done++) {
 				System.arraycopy(nodes, 0, nextnodes, 0, leafcount);
 				for (int i=leafcount ; i<nodes.length ; i++) {
 					int node = nodes[i];
 					if (ddmanager.getNodeVariable(node) == bestVar) {
-						nextnodes[i] = ddmanager.getChild(node, v);
+						nextnodes[i] = ddmanager.getChild(node, done);
 					} else {
 						nextnodes[i] = nodes[i];
 					}
 				}
-				children[v] = combine(ddmanager, nextnodes, leafcount);
+				children[done] = combine(ddmanager, nextnodes, leafcount);
 			}
 			return bestVar.getNodeFree(children);
+		} catch (MDDLimitException e) {
+			release(ddmanager, children, done);
+			throw e;
 		}
 	}
 }
@@ -0,0 +1,173 @@
+package org.colomoto.mddlib.operators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.colomoto.mddlib.MDDLimitException;
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.MDDOperator;
+
+/**
+ * Combine a list of MDDs with a two-nodes operation, following a balanced tree.
+ * <p>
+ * A linear fold (<code>result = op(result, next)</code>) builds a large accumulator early,
+ * which is then traversed again by every later merge. Here, neighbouring MDDs are merged pairwise,
+ * then the results are merged pairwise, and so on: each MDD takes part in a logarithmic number of merges,
+ * on operands of similar sizes.
+ * <p>
+ * The order of the operands is preserved, the operation must be associative.
+ * The merges of a round are independent: they can be performed in parallel if the MDD manager is thread-safe.
+ *
+ * @author Aurelien Naldi
+ */
+public class BalancedReduction {
+
+	private BalancedReduction() {
+		// no instance of this class
+	}
+
+	/**
+	 * Combine a list of MDDs.
+	 *
+	 * @param ddmanager	the MDD manager in which the nodes are stored
+	 * @param op		the operation used to merge two nodes
+	 * @param nodes		the roots of the MDDs to combine, which are not freed
+	 *
+	 * @return the root of the combined MDD
+	 */
+	public static int reduce(MDDManager ddmanager, MDDOperator op, int[] nodes) {
+		return reduce(ddmanager, op, nodes, null);
+	}
+
+	/**
+	 * Combine a list of MDDs, performing the merges of each round in parallel.
+	 * <p>
+	 * The MDD manager must be thread-safe, and must not be locked by the calling thread.
+	 *
+	 * @param ddmanager	the MDD manager in which the nodes are stored
+	 * @param op		the operation used to merge two nodes
+	 * @param nodes		the roots of the MDDs to combine, which are not freed
+	 * @param executor	the executor running the merges, or null to perform them in the calling thread
+	 *
+	 * @return the root of the combined MDD
+	 */
+	public static int reduce(MDDManager ddmanager, MDDOperator op, int[] nodes, ExecutorService executor) {
+		if (nodes.length < 1) {
+			throw new RuntimeException("Need at least one node to merge");
+		}
+
+		int[] current = nodes;
+		boolean owned = false;
+		while (current.length > 1) {
+			int[] next;
+			try {
+				if (executor == null || current.length < 4) {
+					next = round(ddmanager, op, current);
+				} else {
+					next = round(ddmanager, op, current, executor);
+				}
+			} finally {
+				if (owned) {
+					release(ddmanager, current, current.length);
+				}
+			}
+			current = next;
+			owned = true;
+		}
+		if (owned) {
+			return current[0];
+		}
+		return ddmanager.use(current[0]);
+	}
+
+	/**
+	 * Merge neighbouring nodes, an odd node is kept for the next round.
+	 *
+	 * @return the new nodes, owned by the caller
+	 */
+	private static int[] round(MDDManager ddmanager, MDDOperator op, int[] nodes) {
+		int[] next = new int[(nodes.length+1) / 2];
+		int done = 0;
+		try {
+			for ( ; done<nodes.length/2 ; done++) {
+				next[done] = op.combine(ddmanager, nodes[2*done], nodes[2*done+1]);
+			}
+		} catch (MDDLimitException e) {
+			release(ddmanager, next, done);
+			throw e;
+		}
+		if (done < next.length) {
+			next[done] = ddmanager.use(nodes[nodes.length-1]);
+		}
+		return next;
+	}
+
+	private static int[] round(final MDDManager ddmanager, final MDDOperator op, final int[] nodes, ExecutorService executor) {
+		List<Future<Integer>> merges = new ArrayList<Future<Integer>>(nodes.length/2);
+		for (int i=0 ; i<nodes.length/2 ; i++) {
+			final int first = nodes[2*i];
+			final int other = nodes[2*i+1];
+			merges.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return op.combine(ddmanager, first, other);
+				}
+			}));
+		}
+
+		// wait for all merges, even after a failure, to release their results
+		int[] next = new int[(nodes.length+1) / 2];
+		boolean[] success = new boolean[next.length];
+		RuntimeException failure = null;
+		boolean interrupted = false;
+		for (int i=0 ; i<merges.size() ; i++) {
+			while (true) {
+				try {
+					next[i] = merges.get(i).get();
+					success[i] = true;
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						Throwable cause = e.getCause();
+						if (cause instanceof RuntimeException) {
+							failure = (RuntimeException)cause;
+						} else if (cause instanceof Error) {
+							throw (Error)cause;
+						} else {
+							failure = new RuntimeException(cause);
+						}
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (failure != null) {
+			for (int i=0 ; i<merges.size() ; i++) {
+				if (success[i]) {
+					ddmanager.free(next[i]);
+				}
+			}
+			throw failure;
+		}
+		if (merges.size() < next.length) {
+			next[merges.size()] = ddmanager.use(nodes[nodes.length-1]);
+		}
+		return next;
+	}
+
+	private static void release(MDDManager ddmanager, int[] nodes, int count) {
+		for (int i=0 ; i<count ; i++) {
+			ddmanager.free(nodes[i]);
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package org.colomoto.mddlib.operators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Stack;
+
+import org.colomoto.mddlib.MDDManager;
+import org.colomoto.mddlib.MDDVariable;
+
+/**
+ * Combine many constraints with the AND operator, choosing the order of the combinations.
+ * <p>
+ * Combining constraints in the order given can create huge intermediate MDDs,
+ * as unrelated constraints are merged early and every later step traverses their product.
+ * The scheduler proceeds in two steps:
+ * <ul>
+ *  <li>constraints are grouped in clusters of overlapping supports, while the union of the support
+ *  of a cluster remains small. Each cluster is combined at once with the multiple merge of the AND operator.</li>
+ *  <li>the results of the clusters are then merged pairwise: the smallest MDD is merged with the remaining MDD
+ *  sharing the most variables with it, until a single MDD is left.</li>
+ * </ul>
+ * The combination stops as soon as an intermediate result is the 0 leaf.
+ *
+ * @author Aurelien Naldi
+ */
+public class ConjunctionScheduler {
+
+	/**
+	 * Default limit on the number of variables in the support of a cluster.
+	 */
+	public static final int DEFAULT_CLUSTER_SUPPORT = 16;
+
+	private final MDDManager ddmanager;
+	private final int maxClusterSupport;
+
+	private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+	private int sequence = 0;
+
+	/**
+	 * Combine constraints with the AND operator, using the default cluster size.
+	 *
+	 * @param ddmanager	the MDD manager in which the constraints are stored
+	 * @param nodes		the roots of the constraints, which are not freed
+	 *
+	 * @return the conjunction of all constraints
+	 */
+	public static int conjoinAll(MDDManager ddmanager, int[] nodes) {
+		return conjoinAll(ddmanager, nodes, DEFAULT_CLUSTER_SUPPORT);
+	}
+
+	/**
+	 * Combine constraints with the AND operator.
+	 *
+	 * @param ddmanager			the MDD manager in which the constraints are stored
+	 * @param nodes				the roots of the constraints, which are not freed
+	 * @param maxClusterSupport	the maximal number of variables in the support of a cluster.
+	 *							Constraints with a larger support form their own cluster.
+	 *
+	 * @return the conjunction of all constraints
+	 */
+	public static int conjoinAll(MDDManager ddmanager, int[] nodes, int maxClusterSupport) {
+		if (nodes.length == 0) {
+			throw new RuntimeException("Need at least one node to merge");
+		}
+		return new ConjunctionScheduler(ddmanager, maxClusterSupport).conjoin(nodes);
+	}
+
+	private ConjunctionScheduler(MDDManager ddmanager, int maxClusterSupport) {
+		this.ddmanager = ddmanager;
+		this.maxClusterSupport = maxClusterSupport;
+	}
+
+	private int conjoin(int[] nodes) {
+		// non-zero leaves do not affect the conjunction
+		List<Integer> constraints = new ArrayList<Integer>();
+		for (int node: nodes) {
+			if (!ddmanager.isleaf(node)) {
+				constraints.add(node);
+			} else if (node == 0) {
+				return 0;
+			}
+		}
+		if (constraints.isEmpty()) {
+			return nodes[0];
+		}
+
+		int[] roots = new int[constraints.size()];
+		for (int i=0 ; i<roots.length ; i++) {
+			roots[i] = constraints.get(i);
+		}
+		boolean[][] supports = new boolean[roots.length][];
+		ddmanager.collectDecisionVariables(roots, supports);
+
+		try {
+			for (Cluster cluster: cluster(roots, supports)) {
+				int[] members = new int[cluster.members.size()];
+				for (int i=0 ; i<members.length ; i++) {
+					members[i] = cluster.members.get(i);
+				}
+				int result = MDDBaseOperators.AND.combine(ddmanager, members);
+				if (result == 0) {
+					return 0;
+				}
+				add(result);
+			}
+
+			while (queue.size() > 1) {
+				Entry smallest = queue.poll();
+				Entry partner = null;
+				int bestOverlap = -1;
+				for (Entry entry: queue) {
+					int overlap = overlap(smallest.support, entry.support);
+					if (overlap > bestOverlap || (overlap == bestOverlap && entry.compareTo(partner) < 0)) {
+						partner = entry;
+						bestOverlap = overlap;
+					}
+				}
+				queue.remove(partner);
+				int result;
+				try {
+					result = MDDBaseOperators.AND.combine(ddmanager, smallest.node, partner.node);
+				} finally {
+					ddmanager.free(smallest.node);
+					ddmanager.free(partner.node);
+				}
+				if (result == 0) {
+					return 0;
+				}
+				add(result);
+			}
+			return queue.poll().node;
+		} finally {
+			for (Entry entry: queue) {
+				ddmanager.free(entry.node);
+			}
+			queue.clear();
+		}
+	}
+
+	/**
+	 * Group constraints with overlapping supports.
+	 * Constraints are considered from the top of the MDD, each of them joins the cluster
+	 * sharing the most variables with it, if the support of this cluster remains small enough.
+	 */
+	private List<Cluster> cluster(int[] roots, final boolean[][] supports) {
+		Integer[] sorted = new Integer[roots.length];
+		final int[] top = new int[roots.length];
+		for (int i=0 ; i<roots.length ; i++) {
+			sorted[i] = i;
+			top[i] = ddmanager.getNodeVariable(roots[i]).order;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Integer.compare(top[i1], top[i2]);
+			}
+		});
+
+		List<Cluster> clusters = new ArrayList<Cluster>();
+		for (int idx: sorted) {
+			boolean[] support = supports[idx];
+			Cluster best = null;
+			int bestOverlap = 0;
+			for (Cluster cluster: clusters) {
+				int overlap = overlap(support, cluster.support);
+				if (overlap > bestOverlap && cluster.size + count(support) - overlap <= maxClusterSupport) {
+					best = cluster;
+					bestOverlap = overlap;
+				}
+			}
+			if (best == null) {
+				best = new Cluster(support.length);
+				clusters.add(best);
+			}
+			best.add(roots[idx], support);
+		}
+		return clusters;
+	}
+
+	private void add(int node) {
+		if (ddmanager.isleaf(node)) {
+			// a non-zero leaf does not affect the conjunction
+			if (queue.isEmpty()) {
+				queue.add(new Entry(node, new boolean[ddmanager.getAllVariables().length], 0, sequence++));
+			}
+			return;
+		}
+		queue.add(new Entry(node, ddmanager.collectDecisionVariables(node), countNodes(node), sequence++));
+	}
+
+	private int countNodes(int node) {
+		Set<Integer> visited = new HashSet<Integer>();
+		Stack<Integer> pending = new Stack<Integer>();
+		pending.push(node);
+		while (!pending.isEmpty()) {
+			int current = pending.pop();
+			if (ddmanager.isleaf(current) || !visited.add(current)) {
+				continue;
+			}
+			MDDVariable var = ddmanager.getNodeVariable(current);
+			for (int v=0 ; v<var.nbval ; v++) {
+				pending.push(ddmanager.getChild(current, v));
+			}
+		}
+		return visited.size();
+	}
+
+	private static int overlap(boolean[] s1, boolean[] s2) {
+		int overlap = 0;
+		for (int i=0 ; i<s1.length ; i++) {
+			if (s1[i] && s2[i]) {
+				overlap++;
+			}
+		}
+		return overlap;
+	}
+
+	private static int count(boolean[] support) {
+		int count = 0;
+		for (boolean b: support) {
+			if (b) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * Constraints combined together with a multiple merge.
+	 */
+	private static class Cluster {
+		final List<Integer> members = new ArrayList<Integer>();
+		final boolean[] support;
+		int size = 0;
+
+		Cluster(int nbvars) {
+			this.support = new boolean[nbvars];
+		}
+
+		void add(int node, boolean[] nodeSupport) {
+			members.add(node);
+			for (int i=0 ; i<support.length ; i++) {
+				if (nodeSupport[i] && !support[i]) {
+					support[i] = true;
+					size++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Intermediate result waiting to be merged, ordered by size.
+	 */
+	private static class Entry implements Comparable<Entry> {
+		final int node;
+		final boolean[] support;
+		final int size;
+		final int sequence;
+
+		Entry(int node, boolean[] support, int size, int sequence) {
+			this.node = node;
+			this.support = support;
+			this.size = size;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (size != other.size) {
+				return Integer.compare(size, other.size);
+			}
+			return Integer.compare(sequence, other.sequence);
+		}
+	}
+}
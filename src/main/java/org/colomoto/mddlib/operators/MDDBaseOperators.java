@@ -51,7 +51,7 @@ public class MDDBaseOperators {
 class MDDAndOperator extends AbstractOperator {
 
 	protected MDDAndOperator() {
-		super(true);
+		super(true, true);
 	}
 
 	@Override
@@ -109,7 +109,7 @@ class MDDAndOperator extends AbstractOperator {
 class MDDOrOperator extends AbstractOperator {
 
 	protected MDDOrOperator() {
-		super(true);
+		super(true, true);
 	}
 	
 	@Override
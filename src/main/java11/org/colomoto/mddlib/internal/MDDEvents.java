@@ -0,0 +1,185 @@
+package org.colomoto.mddlib.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Emit Java Flight Recorder events on the activity of MDD stores and operators.
+ * <p>
+ * This version of the class is used on Java 11 and later, see the default version for the API.
+ * Events are only created while a recording is running.
+ *
+ * @author Aurelien Naldi
+ */
+public class MDDEvents {
+
+	private static volatile boolean enabled = false;
+
+	static {
+		if (FlightRecorder.isAvailable()) {
+			FlightRecorder.addListener(new FlightRecorderListener() {
+				@Override
+				public void recordingStateChanged(Recording recording) {
+					updateEnabled();
+				}
+
+				@Override
+				public void recorderInitialized(FlightRecorder recorder) {
+					updateEnabled();
+				}
+			});
+		}
+	}
+
+	private MDDEvents() {
+		// no instance of this class
+	}
+
+	private static void updateEnabled() {
+		boolean running = false;
+		if (FlightRecorder.isInitialized()) {
+			for (Recording recording: FlightRecorder.getFlightRecorder().getRecordings()) {
+				if (recording.getState() == RecordingState.RUNNING) {
+					running = true;
+					break;
+				}
+			}
+		}
+		enabled = running;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void tableGrowth(String table, int oldSize, int newSize) {
+		TableGrowthEvent event = new TableGrowthEvent();
+		if (event.isEnabled()) {
+			event.table = table;
+			event.oldSize = oldSize;
+			event.newSize = newSize;
+			event.commit();
+		}
+	}
+
+	public static Object beginRehash() {
+		RehashEvent event = new RehashEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	public static void endRehash(Object event, int size, int nodes) {
+		if (event == null) {
+			return;
+		}
+		RehashEvent rehash = (RehashEvent)event;
+		rehash.end();
+		if (rehash.shouldCommit()) {
+			rehash.size = size;
+			rehash.nodes = nodes;
+			rehash.commit();
+		}
+	}
+
+	public static Object beginSweep() {
+		SweepEvent event = new SweepEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	public static void endSweep(Object event, long removed) {
+		if (event == null) {
+			return;
+		}
+		SweepEvent sweep = (SweepEvent)event;
+		sweep.end();
+		if (sweep.shouldCommit()) {
+			sweep.removed = removed;
+			sweep.commit();
+		}
+	}
+
+	public static Object beginOperation() {
+		OperationEvent event = new OperationEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	public static void endOperation(Object event, String operator) {
+		if (event == null) {
+			return;
+		}
+		OperationEvent operation = (OperationEvent)event;
+		operation.end();
+		if (operation.shouldCommit()) {
+			operation.operator = operator;
+			operation.commit();
+		}
+	}
+}
+
+@Name("org.colomoto.mddlib.TableGrowth")
+@Label("MDD Table Growth")
+@Description("A storage array of a MDD store was enlarged")
+@Category("MDDlib")
+class TableGrowthEvent extends Event {
+	@Label("Table")
+	String table;
+
+	@Label("Previous Length")
+	int oldSize;
+
+	@Label("New Length")
+	int newSize;
+}
+
+@Name("org.colomoto.mddlib.Rehash")
+@Label("MDD Rehash")
+@Description("The unique table of a MDD store was enlarged and its content migrated")
+@Category("MDDlib")
+class RehashEvent extends Event {
+	@Label("Table Size")
+	int size;
+
+	@Label("Nodes")
+	int nodes;
+}
+
+@Name("org.colomoto.mddlib.Sweep")
+@Label("MDD Sweep")
+@Description("Nodes were removed from a MDD store after releasing a node")
+@Category("MDDlib")
+@Threshold("1 ms")
+class SweepEvent extends Event {
+	@Label("Removed Nodes")
+	long removed;
+}
+
+@Name("org.colomoto.mddlib.Operation")
+@Label("MDD Operation")
+@Description("A call to a MDD operator, including all its recursive steps and nested operations")
+@Category("MDDlib")
+@Threshold("10 ms")
+@StackTrace(false)
+class OperationEvent extends Event {
+	@Label("Operator")
+	String operator;
+}
@@ -35,6 +35,16 @@ public class NQueens {
 	    			s_result = N_QUEENS_SOLUTIONS_COUNT[N]+" solutions [found "+count+"]";
 	    		}
 	    		System.out.println("(B) N="+N+": "+s_result+", temps: "+start);
+
+	    		start = System.currentTimeMillis();
+	    		int builderCount = testBNQueensBuilder(N);
+	    		start = System.currentTimeMillis()-start;
+	    		if (builderCount == count) {
+	    			s_result = builderCount+" solutions";
+	    		} else {
+	    			s_result = count+" solutions [found "+builderCount+"]";
+	    		}
+	    		System.out.println("(C) N="+N+": "+s_result+", temps: "+start);
     		}
     		
     		if (N>2) {
@@ -125,6 +135,72 @@ public class NQueens {
 	
 	
 	
+	/**
+	 * Boolean version of the n-queens problem, using cardinality constraints for the rows
+	 */
+	public static int testBNQueensBuilder(byte N) {
+		int nbvar = N*N;
+		List<String> keys = new ArrayList<String>();
+		int[][] basics = new int[nbvar][2];
+		for (int i=0 ; i<N ; i++) {
+			for (int j=0 ; j<N ; j++) {
+				keys.add(i+","+j);
+			}
+		}
+		MDDManager ddmanager = MDDManagerFactory.getManager(keys, 2);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		for (int i=0 ; i<nbvar ; i++) {
+			basics[i][0] = variables[i].getNode(1, 0);
+			basics[i][1] = variables[i].getNode(0, 1);
+		}
+		
+		// first set of constraints: exactly one queen on each row
+		ConstraintBuilder constraints = new ConstraintBuilder(ddmanager);
+		MDDVariable[] row = new MDDVariable[N];
+		int[] all_cst = new int[N + nbvar*N*4];
+		int cstidx = 0;
+		for (int i=0 ; i<N ; i++) {
+			System.arraycopy(variables, i*N, row, 0, N);
+			all_cst[cstidx++] = constraints.exactly(row, 1);
+		}
+		
+		// each place on the board is in conflict with places on the same column or diagonal
+		int pos;
+		for (int i=0 ; i<N ; i++) {
+			for (int j=0 ; j<N ; j++) {
+				pos = i*N+j;
+				for (int k=0 ; k<N ; k++) {
+					if (k>i) {
+						all_cst[cstidx++] = get_nand(ddmanager, basics, pos, k*N+j);
+					}
+					if (k>j) {
+						int dj = k-j;
+						int r = i+dj;
+						if (r<N) {
+							all_cst[cstidx++] = get_nand(ddmanager, basics, pos, r*N+k);
+						}
+						r = i-dj;
+						if (r>=0) {
+							all_cst[cstidx++] = get_nand(ddmanager, basics, pos, r*N+k);
+						}
+					}
+				}
+			}
+		}
+		int[] defined_cst = new int[cstidx];
+		System.arraycopy(all_cst, 0, defined_cst, 0, cstidx);
+		int result = MDDBaseOperators.AND.combine(ddmanager, defined_cst);
+
+		for (int i: defined_cst) {
+			ddmanager.free(i);
+		}
+		System.out.println("usage: "+ddmanager.getNodeCount());
+		
+		PathSearcher searcher = new PathSearcher(ddmanager, 1);
+		searcher.setNode(result);
+		return searcher.countPaths();
+	}
+	
 	private static int get_nand(MDDManager ddmanager, int[][] basics, int p1, int p2) {
 		int result = MDDBaseOperators.OR.combine(ddmanager, basics[p1][0], basics[p2][0]);
 		return result;
@@ -1,9 +1,15 @@
 package org.colomoto.mddlib;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.colomoto.mddlib.operators.MDDBaseOperators;
 import org.junit.jupiter.api.Test;
 
 public class TestComparators {
@@ -28,7 +34,59 @@ public class TestComparators {
 		assertFalse(comparator.similar(n1, m2));
 	}
 
-	
+	@Test
+	public void testDifferentOrders() {
+		MDDManager ddm1 = TestMDD.getSimpleManager(5);
+		List<String> keys = new ArrayList<String>();
+		for (int i = 5; i >= 0; i--) {
+			keys.add("var" + i);
+		}
+		MDDManager ddm2 = MDDManagerFactory.getManager(keys, 10);
+
+		int n1 = getMDDExample1(ddm1);
+		int m1 = getMDDExample2(ddm1);
+		// rebuild the examples in reverse order: !var2 & var4 and !var2 & var3
+		int notVar2 = ddm2.getVariableForKey("var2").getNode(1, 0);
+		int n2 = MDDBaseOperators.AND.combine(ddm2, notVar2, ddm2.getVariableForKey("var4").getNode(0, 1));
+		int m2 = MDDBaseOperators.AND.combine(ddm2, notVar2, ddm2.getVariableForKey("var3").getNode(0, 1));
+
+		MDDComparator comparator = MDDComparatorFactory.getComparator(ddm1, ddm2);
+		assertTrue(comparator.similar(n1, n2));
+		assertTrue(comparator.similar(m1, m2));
+		assertFalse(comparator.similar(n1, m2));
+		assertFalse(comparator.similar(1, n2));
+
+		// the first MDD depends on a variable missing in the other manager
+		MDDVariable[] variables = ddm1.getAllVariables();
+		MDDManager ddm3 = MDDManagerFactory.getManager(keys.subList(0, 3), 10);
+		assertFalse(MDDComparatorFactory.getComparator(ddm1, ddm3).similar(variables[0].getNode(0, 1), 1));
+	}
+
+	@Test
+	public void testFingerprints() {
+		MDDManager ddm1 = TestMDD.getSimpleManager(5);
+		MDDManager ddm2 = TestMDD.getSimpleManager(5);
+
+		int n1 = getMDDExample1(ddm1);
+		int m1 = getMDDExample2(ddm1);
+		int m2 = getMDDExample2(ddm2);
+		int n2 = getMDDExample1(ddm2);
+
+		assertEquals(ddm1.getFingerprint(n1), ddm2.getFingerprint(n2));
+		assertEquals(ddm1.getFingerprint(m1), ddm2.getFingerprint(m2));
+		assertNotEquals(ddm1.getFingerprint(n1), ddm1.getFingerprint(m1));
+		assertNotEquals(ddm1.getFingerprint(0), ddm1.getFingerprint(1));
+
+		// the cached fingerprint is forgotten when a node is freed and its bloc reused
+		MDDVariable[] variables = ddm1.getAllVariables();
+		int node = variables[0].getNode(0, 1);
+		long fp = ddm1.getFingerprint(node);
+		ddm1.free(node);
+		int other = variables[1].getNode(0, 1);
+		assertNotEquals(fp, ddm1.getFingerprint(other));
+		assertEquals(ddm2.getFingerprint(ddm2.getAllVariables()[1].getNode(0, 1)), ddm1.getFingerprint(other));
+	}
+
 	private int getMDDExample1(MDDManager ddmanager) {
 		MDDVariable[] variables = ddmanager.getAllVariables();
 		
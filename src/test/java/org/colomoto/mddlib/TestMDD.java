@@ -1,12 +1,24 @@
 package org.colomoto.mddlib;
 
+import org.colomoto.mddlib.operators.AbstractOperator;
+import org.colomoto.mddlib.operators.BalancedReduction;
+import org.colomoto.mddlib.operators.ConjunctionScheduler;
+import org.colomoto.mddlib.operators.MDDBaseOperators;
+import org.colomoto.mddlib.operators.OverwriteOperator;
 import org.junit.jupiter.api.Test;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 /**
@@ -152,6 +164,15 @@ public class TestMDD {
 			}
 			first = false;
 		}
+
+		// variable lookup by key
+		assertEquals(variables[3], manager.getVariableForKey("var3"));
+		assertEquals(variables[3], pManager.getVariableForKey("var3"));
+		assertEquals(null, manager.getVariableForKey("var5"));
+		assertEquals(null, pManager.getVariableForKey("var5"));
+		MDDVariable added = pManager.ensureVariable("var5", (byte)2);
+		assertEquals(added, manager.getVariableForKey("var5"));
+		assertEquals(added, pManager.getVariableForKey("var5"));
 	}
 
 	private void checkPath(PathSearcher ps, int node, int[][] expected) {
@@ -188,7 +209,78 @@ public class TestMDD {
 		assertEquals(VariableEffect.DUAL, ddmanager.getVariableEffect(variables[4], n3));
 		assertEquals(VariableEffect.DUAL, ddmanager.getVariableEffect(variables[2], n3));
 		assertEquals(VariableEffect.NONE, ddmanager.getVariableEffect(variables[3], n3));
-		
+
+		VariableEffect[] effects = ddmanager.getVariableEffects(n3);
+		assertEquals(variables.length, effects.length);
+		for (int i=0 ; i<variables.length ; i++) {
+			assertEquals(ddmanager.getVariableEffect(variables[i], n3), effects[i]);
+		}
+	}
+
+	@Test
+	public void testSharedTraversal() {
+		// parity functions have 2^n paths but only 2n nodes
+		int size = 40;
+		MDDManager ddmanager = getSimpleManager(size);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		int even = 1, odd = 0;
+		for (int i=size-1 ; i>=2 ; i--) {
+			int nextEven = variables[i].getNode(even, odd);
+			int nextOdd = variables[i].getNode(odd, even);
+			even = nextEven;
+			odd = nextOdd;
+		}
+
+		boolean[] support = ddmanager.collectDecisionVariables(even);
+		for (int i=0 ; i<size ; i++) {
+			assertEquals(i >= 2, support[i]);
+		}
+		assertEquals(2, ddmanager.getSign(even, variables[size-1]));
+		assertEquals(0, ddmanager.getSign(even, variables[0]));
+
+		int n1 = variables[0].getNode(0, 1);
+		int n2 = variables[1].getNode(0, even);
+		boolean[][] supports = new boolean[2][];
+		support = ddmanager.collectDecisionVariables(new int[] {n1, n2}, supports);
+		for (int i=0 ; i<size ; i++) {
+			assertEquals(true, support[i]);
+			assertEquals(i == 0, supports[0][i]);
+			assertEquals(i > 0, supports[1][i]);
+		}
+		assertEquals(support.length, ddmanager.collectDecisionVariables(new int[] {n1, n2}, null).length);
+	}
+
+	@Test
+	public void testMultivaluedEffects() {
+		MDDVariableFactory varFactory = new MDDVariableFactory();
+		for (int i = 0; i < 3; i++) {
+			varFactory.add("var" + i, (byte)3);
+		}
+		MDDManager ddmanager = MDDManagerFactory.getManager( varFactory, 3);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+
+		// var2 increases the value, var0 activates then inhibits
+		int n1 = variables[2].getNode(new int[]{0, 1, 2});
+		int n2 = variables[0].getNode(new int[]{0, n1, 0});
+
+		VariableEffect[][] effects = ddmanager.getMultivaluedVariableEffects(n2);
+		assertEquals(VariableEffect.POSITIVE, effects[0][0]);
+		assertEquals(VariableEffect.NEGATIVE, effects[0][1]);
+		assertEquals(VariableEffect.NONE, effects[1][0]);
+		assertEquals(VariableEffect.NONE, effects[1][1]);
+		assertEquals(VariableEffect.POSITIVE, effects[2][0]);
+		assertEquals(VariableEffect.POSITIVE, effects[2][1]);
+		for (int i=0 ; i<variables.length ; i++) {
+			VariableEffect[] expected = ddmanager.getMultivaluedVariableEffect(variables[i], n2);
+			for (int v=0 ; v<expected.length ; v++) {
+				assertEquals(expected[v], effects[i][v]);
+			}
+		}
+
+		VariableEffect[] effect = ddmanager.getVariableEffects(n2);
+		assertEquals(VariableEffect.DUAL, effect[0]);
+		assertEquals(VariableEffect.NONE, effect[1]);
+		assertEquals(VariableEffect.POSITIVE, effect[2]);
 	}
 	
 	@Test
@@ -234,6 +326,651 @@ public class TestMDD {
 		assertEquals(n3, n4);
 	}
 	
+	@Test
+	public void testCompose() {
+		MDDManager ddmanager = getSimpleManager(5);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+
+		// f = var3 AND var4 ; g = var1 OR NOT var4
+		int n4 = variables[4].getNode(0, 1);
+		int f = variables[3].getNode(0, n4);
+		int g = variables[1].getNode(variables[4].getNode(1, 0), 1);
+
+		// substitute var4 by var0 and var3 by g in both f and g
+		Map<MDDVariable, Integer> substitutions = new HashMap<MDDVariable, Integer>();
+		int n0 = variables[0].getNode(0, 1);
+		substitutions.put(variables[4], n0);
+		substitutions.put(variables[3], g);
+		MDDComposer composer = new MDDComposer(ddmanager, substitutions);
+		int[] composed = composer.compose(new int[] {f, g});
+		composer.release();
+
+		byte[] values = new byte[5];
+		for (int s=0 ; s<32 ; s++) {
+			for (int i=0 ; i<5 ; i++) {
+				values[i] = (byte)((s >> i) & 1);
+			}
+			int vg = (values[1] == 1 || values[4] == 0) ? 1 : 0;
+			int vf = (vg == 1 && values[0] == 1) ? 1 : 0;
+			assertEquals(vf, ddmanager.reach(composed[0], values));
+			assertEquals((values[1] == 1 || values[0] == 0) ? 1 : 0, ddmanager.reach(composed[1], values));
+		}
+
+		// the cache is released: only the result and the original nodes remain
+		int count = ddmanager.getNodeCount();
+		ddmanager.free(composed[0]);
+		ddmanager.free(composed[1]);
+		assertTrue(ddmanager.getNodeCount() < count);
+	}
+
+	@Test
+	public void testSynchronization() throws InterruptedException {
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 8; i++) {
+			keys.add("var" + i);
+		}
+
+		// an unsynchronized store used by a single thread
+		MDDManager single = MDDManagerFactory.getManager(keys, 2, false);
+		MDDVariable[] variables = single.getAllVariables();
+		int node = variables[0].getNode(0, variables[1].getNode(0, 1));
+		assertEquals(1, single.reach(node, new byte[] {1, 1, 0, 0, 0, 0, 0, 0}));
+		assertEquals(0, single.reach(node, new byte[] {1, 0, 0, 0, 0, 0, 0, 0}));
+
+		// concurrent construction of identical nodes in the default store
+		final MDDManager shared = MDDManagerFactory.getManager(keys, 2);
+		final MDDVariable[] sharedVariables = shared.getAllVariables();
+		final int[][] results = new int[4][];
+		Thread[] threads = new Thread[results.length];
+		for (int t=0 ; t<threads.length ; t++) {
+			final int idx = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					int[] nodes = new int[256];
+					for (int s=0 ; s<nodes.length ; s++) {
+						int cur = 1;
+						for (int i=sharedVariables.length-1 ; i>=0 ; i--) {
+							if (((s >> i) & 1) == 1) {
+								cur = sharedVariables[i].getNodeFree(0, cur);
+							} else {
+								cur = sharedVariables[i].getNodeFree(cur, 0);
+							}
+						}
+						nodes[s] = cur;
+					}
+					results[idx] = nodes;
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		for (int t=1 ; t<results.length ; t++) {
+			for (int s=0 ; s<256 ; s++) {
+				assertEquals(results[0][s], results[t][s]);
+			}
+		}
+		for (int[] nodes: results) {
+			for (int n: nodes) {
+				shared.free(n);
+			}
+		}
+		assertEquals(0, shared.getNodeCount());
+	}
+
+	@Test
+	public void testMapper() {
+		MDDManager source = getSimpleManager(4);
+		MDDVariable[] variables = source.getAllVariables();
+		// (var0 & var1) | (var2 & !var3)
+		int left = variables[0].getNode(0, variables[1].getNode(0, 1));
+		int right = variables[2].getNode(0, variables[3].getNode(1, 0));
+		int node = MDDBaseOperators.OR.combine(source, left, right);
+
+		// the target contains an extra variable and uses the reverse order
+		List<String> keys = new ArrayList<String>();
+		for (int i = 4; i >= 0; i--) {
+			keys.add("var" + i);
+		}
+		Map<Integer, Integer> indices = new HashMap<Integer, Integer>();
+		for (int i = 0; i < 4; i++) {
+			indices.put(i, 4-i);
+		}
+		MDDManager target = MDDManagerFactory.getManager(keys, 2);
+		IndexMapper mapper = IndexMapper.getSimpleMapper(indices);
+		int[] mapped = new MDDMapper(source, target, mapper).mapMDD(new int[] {node, left});
+		byte[] values = new byte[4];
+		byte[] targetValues = new byte[5];
+		for (int s=0 ; s<16 ; s++) {
+			for (int i=0 ; i<4 ; i++) {
+				values[i] = (byte)((s >> i) & 1);
+				targetValues[mapper.get(i)] = values[i];
+			}
+			assertEquals(source.reach(node, values), target.reach(mapped[0], targetValues));
+			assertEquals(source.reach(left, values), target.reach(mapped[1], targetValues));
+		}
+		target.free(mapped[0]);
+		target.free(mapped[1]);
+		assertEquals(0, target.getNodeCount());
+	}
+
+	@Test
+	public void testStatistics() {
+		MDDManager ddmanager = getSimpleManager(5);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		AbstractOperator and = (AbstractOperator)MDDBaseOperators.AND;
+		long recursions = and.getRecursionCount();
+
+		int n1 = variables[0].getNode(0, 1);
+		int n2 = variables[1].getNode(0, 1);
+		int n3 = variables[1].getNode(0, 1);
+		int node = and.combine(ddmanager, n1, n2);
+		assertTrue(and.getRecursionCount() > recursions);
+
+		MDDStatistics stats = ddmanager.getStatistics();
+		assertEquals(3, stats.nodes);
+		assertEquals(3, stats.created);
+		assertEquals(3, stats.peakNodes);
+		assertTrue(stats.hits >= 1);
+		assertTrue(stats.lookups >= stats.hits);
+		assertTrue(stats.getReservedBytes() >= stats.getUsedBytes());
+
+		ddmanager.free(node);
+		ddmanager.free(n1);
+		ddmanager.free(n2);
+		ddmanager.free(n3);
+		stats = ddmanager.getStatistics();
+		assertEquals(0, stats.nodes);
+		assertEquals(3, stats.freed);
+		assertEquals(3, stats.peakNodes);
+	}
+
+	@Test
+	public void testLimits() {
+		MDDManager ddmanager = getSimpleManager(10);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		// (v0 & v1) | (v2 & v3) | ... and the same function with pairs (v0 & v5) | (v1 & v6) | ...
+		int[] first = new int[5];
+		int[] second = new int[5];
+		for (int i=0 ; i<5 ; i++) {
+			int a = variables[2*i].getNode(0, 1);
+			int b = variables[2*i+1].getNode(0, 1);
+			first[i] = MDDBaseOperators.AND.combine(ddmanager, a, b);
+			ddmanager.free(a);
+			ddmanager.free(b);
+			a = variables[i].getNode(0, 1);
+			b = variables[i+5].getNode(0, 1);
+			second[i] = MDDBaseOperators.AND.combine(ddmanager, a, b);
+			ddmanager.free(a);
+			ddmanager.free(b);
+		}
+		int count = ddmanager.getNodeCount();
+
+		// the second disjunction is much larger with this order
+		ddmanager.setLimits(count + 20, 0);
+		try {
+			MDDBaseOperators.OR.combine(ddmanager, second);
+			fail("The node limit should be reached");
+		} catch (MDDLimitException e) {
+			// the partial result was released
+			assertEquals(count, ddmanager.getNodeCount());
+		}
+		int node = MDDBaseOperators.OR.combine(ddmanager, first);
+		ddmanager.free(node);
+
+		ddmanager.setLimits(0, 1000);
+		try {
+			MDDBaseOperators.OR.combine(ddmanager, second);
+			fail("The memory limit should be reached");
+		} catch (MDDLimitException e) {
+			assertEquals(count, ddmanager.getNodeCount());
+		}
+
+		// cancellation
+		ddmanager.setLimits(0, 0);
+		CancellationToken token = new CancellationToken();
+		ddmanager.setCancellationToken(token);
+		token.cancel();
+		try {
+			MDDBaseOperators.OR.combine(ddmanager, second);
+			fail("The operation should be cancelled");
+		} catch (MDDLimitException e) {
+			assertEquals(count, ddmanager.getNodeCount());
+		}
+		ddmanager.setCancellationToken(null);
+		node = MDDBaseOperators.OR.combine(ddmanager, second);
+		assertTrue(ddmanager.getNodeCount() > count + 20);
+		ddmanager.free(node);
+		assertEquals(count, ddmanager.getNodeCount());
+	}
+
+	@Test
+	public void testIncrementalRehash() {
+		MDDManager ddmanager = getSimpleManager(20);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+
+		// build many distinct nodes, the hashtable is extended several times
+		int[] nodes = new int[3000];
+		for (int i=0 ; i<nodes.length ; i++) {
+			int node = 1;
+			for (int v=11 ; v>=0 ; v--) {
+				if (((i >> v) & 1) == 1) {
+					node = variables[v].getNodeFree(0, node);
+				} else {
+					node = variables[v].getNodeFree(node, 0);
+				}
+			}
+			nodes[i] = node;
+
+			// existing nodes are still found during the migration
+			if (i % 7 == 0 && (i/2) % 3 != 0) {
+				int j = i/2;
+				int again = 1;
+				for (int v=11 ; v>=0 ; v--) {
+					if (((j >> v) & 1) == 1) {
+						again = variables[v].getNodeFree(0, again);
+					} else {
+						again = variables[v].getNodeFree(again, 0);
+					}
+				}
+				assertEquals(nodes[j], again);
+				ddmanager.free(again);
+			}
+			// free some nodes during the migration
+			if (i % 3 == 0) {
+				ddmanager.free(nodes[i]);
+				nodes[i] = -1;
+			}
+		}
+		assertTrue(ddmanager.getStatistics().rehashCount > 1);
+
+		for (int node: nodes) {
+			if (node != -1) {
+				ddmanager.free(node);
+			}
+		}
+		assertEquals(0, ddmanager.getNodeCount());
+	}
+
+	@Test
+	public void testCardinality() {
+		MDDVariableFactory vbuilder = new MDDVariableFactory();
+		for (int i=0 ; i<6 ; i++) {
+			vbuilder.add("var"+i, (byte)(i == 2 ? 3 : 2));
+		}
+		MDDManager ddmanager = MDDManagerFactory.getManager(vbuilder, 2);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		ConstraintBuilder builder = new ConstraintBuilder(ddmanager);
+
+		// constrain the first 5 variables, in reverse order
+		MDDVariable[] constrained = new MDDVariable[5];
+		for (int i=0 ; i<constrained.length ; i++) {
+			constrained[i] = variables[4-i];
+		}
+		int atMost = builder.atMost(constrained, 2);
+		int atLeast = builder.atLeast(constrained, 2);
+		int exactly = builder.exactly(constrained, 2);
+		int range = builder.cardinality(constrained, 1, 3);
+
+		byte[] state = new byte[variables.length];
+		for (int s=0 ; s<3*32 ; s++) {
+			int active = 0;
+			int code = s;
+			for (int v=0 ; v<variables.length ; v++) {
+				state[v] = (byte)(code % variables[v].nbval);
+				code /= variables[v].nbval;
+				if (v < 5 && state[v] > 0) {
+					active++;
+				}
+			}
+			assertEquals(active <= 2 ? 1 : 0, ddmanager.reach(atMost, state));
+			assertEquals(active >= 2 ? 1 : 0, ddmanager.reach(atLeast, state));
+			assertEquals(active == 2 ? 1 : 0, ddmanager.reach(exactly, state));
+			assertEquals(active >= 1 && active <= 3 ? 1 : 0, ddmanager.reach(range, state));
+		}
+
+		assertEquals(0, builder.atLeast(constrained, 6));
+		assertEquals(1, builder.atMost(constrained, 5));
+		ddmanager.free(atMost);
+		ddmanager.free(atLeast);
+		ddmanager.free(exactly);
+		ddmanager.free(range);
+		assertEquals(0, ddmanager.getNodeCount());
+
+		// layered construction: at most (k+1) nodes per variable
+		MDDManager large = getSimpleManager(40);
+		int node = new ConstraintBuilder(large).atMost(large.getAllVariables(), 3);
+		assertTrue(large.getNodeCount() <= 40*4);
+		large.free(node);
+		assertEquals(0, large.getNodeCount());
+
+		// the construction work is also linear in the number of variables for a small bound
+		MDDManager huge = getSimpleManager(2000);
+		MDDVariable[] hugeVariables = huge.getAllVariables();
+		ConstraintBuilder hugeBuilder = new ConstraintBuilder(huge);
+		int[] hugeNodes = {
+				hugeBuilder.atLeast(hugeVariables, 1),
+				hugeBuilder.atLeast(hugeVariables, 2),
+				hugeBuilder.atMost(hugeVariables, 2),
+				hugeBuilder.exactly(hugeVariables, 2),
+		};
+		MDDStatistics hugeStats = huge.getStatistics();
+		assertTrue(hugeStats.lookups <= 4 * 2000 * 4);
+		assertTrue(hugeStats.created <= 4 * 2000 * 4);
+		byte[] hugeState = new byte[hugeVariables.length];
+		hugeState[1999] = 1;
+		assertEquals(1, huge.reach(hugeNodes[0], hugeState));
+		assertEquals(0, huge.reach(hugeNodes[1], hugeState));
+		hugeState[17] = 1;
+		assertEquals(1, huge.reach(hugeNodes[1], hugeState));
+		assertEquals(1, huge.reach(hugeNodes[3], hugeState));
+		hugeState[1234] = 1;
+		assertEquals(1, huge.reach(hugeNodes[1], hugeState));
+		assertEquals(0, huge.reach(hugeNodes[2], hugeState));
+		assertEquals(0, huge.reach(hugeNodes[3], hugeState));
+		for (int hugeNode: hugeNodes) {
+			huge.free(hugeNode);
+		}
+		assertEquals(0, huge.getNodeCount());
+	}
+
+	@Test
+	public void testNQueens() {
+		// rows built with n-ary OR and pairwise conflicts, or with cardinality constraints
+		int[] solutions = {0,1,0,0,2,10,4};
+		for (byte n=4 ; n<solutions.length ; n++) {
+			assertEquals(solutions[n], NQueens.testBNQueens(n));
+			assertEquals(solutions[n], NQueens.testBNQueensBuilder(n));
+		}
+	}
+
+	@Test
+	public void testLinear() {
+		MDDVariableFactory vbuilder = new MDDVariableFactory();
+		for (int i=0 ; i<5 ; i++) {
+			vbuilder.add("var"+i, (byte)(2 + i%3));
+		}
+		MDDManager ddmanager = MDDManagerFactory.getManager(vbuilder, 2);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		ConstraintBuilder builder = new ConstraintBuilder(ddmanager);
+
+		// constrain the first 4 variables, in a shuffled order
+		MDDVariable[] constrained = { variables[2], variables[0], variables[3], variables[1] };
+		int[] weights = { 2, 3, -1, 1 };
+		int size = 1;
+		for (MDDVariable var: variables) {
+			size *= var.nbval;
+		}
+		byte[] state = new byte[variables.length];
+		for (Comparison comparison: Comparison.values()) {
+			for (int bound=-3 ; bound<12 ; bound++) {
+				int node = builder.linear(constrained, weights, comparison, bound);
+				for (int s=0 ; s<size ; s++) {
+					int code = s;
+					for (int v=0 ; v<variables.length ; v++) {
+						state[v] = (byte)(code % variables[v].nbval);
+						code /= variables[v].nbval;
+					}
+					int sum = 2*state[2] + 3*state[0] - state[3] + state[1];
+					assertEquals(comparison.test(sum, bound) ? 1 : 0, ddmanager.reach(node, state));
+				}
+				ddmanager.free(node);
+			}
+		}
+		assertEquals(0, ddmanager.getNodeCount());
+
+		// bounded weights: the number of nodes on a level is bounded by the number of partial sums
+		MDDManager large = getSimpleManager(60);
+		MDDVariable[] all = large.getAllVariables();
+		int[] unit = new int[all.length];
+		for (int i=0 ; i<unit.length ; i++) {
+			unit[i] = 1 + i%3;
+		}
+		int node = new ConstraintBuilder(large).linear(all, unit, Comparison.GE, 60);
+		assertTrue(large.getNodeCount() <= 60*120);
+		large.free(node);
+		assertEquals(0, large.getNodeCount());
+	}
+
+	@Test
+	public void testConjunctionScheduler() {
+		MDDManager ddmanager = getSimpleManager(16);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+
+		// random clauses with two literals
+		Random random = new Random(7);
+		int[] clauses = new int[60];
+		for (int i=0 ; i<clauses.length ; i++) {
+			int v1 = random.nextInt(variables.length);
+			int v2 = (v1 + 1 + random.nextInt(3)) % variables.length;
+			int l1 = random.nextBoolean() ? variables[v1].getNode(0, 1) : variables[v1].getNode(1, 0);
+			int l2 = random.nextBoolean() ? variables[v2].getNode(0, 1) : variables[v2].getNode(1, 0);
+			clauses[i] = MDDBaseOperators.OR.combine(ddmanager, l1, l2);
+			ddmanager.free(l1);
+			ddmanager.free(l2);
+		}
+
+		for (int size=10 ; size<=clauses.length ; size+=25) {
+			int[] subset = Arrays.copyOf(clauses, size);
+			int expected = MDDBaseOperators.AND.combine(ddmanager, subset);
+			assertEquals(expected, ConjunctionScheduler.conjoinAll(ddmanager, subset));
+			assertEquals(expected, ConjunctionScheduler.conjoinAll(ddmanager, subset, 2));
+			ddmanager.free(expected);
+			ddmanager.free(expected);
+			ddmanager.free(expected);
+		}
+
+		// early exit on contradictions and non-zero leaves
+		int positive = variables[3].getNode(0, 1);
+		int negative = variables[3].getNode(1, 0);
+		int[] contradiction = Arrays.copyOf(clauses, clauses.length+2);
+		contradiction[clauses.length] = positive;
+		contradiction[clauses.length+1] = negative;
+		assertEquals(0, ConjunctionScheduler.conjoinAll(ddmanager, contradiction));
+		assertEquals(positive, ConjunctionScheduler.conjoinAll(ddmanager, new int[] {1, positive, 1}));
+		ddmanager.free(positive);
+		assertEquals(1, ConjunctionScheduler.conjoinAll(ddmanager, new int[] {1, 1}));
+		ddmanager.free(positive);
+		ddmanager.free(negative);
+
+		for (int clause: clauses) {
+			ddmanager.free(clause);
+		}
+		assertEquals(0, ddmanager.getNodeCount());
+	}
+
+	@Test
+	public void testBalancedReduction() throws InterruptedException {
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 12; i++) {
+			keys.add("var" + i);
+		}
+		MDDManager ddmanager = MDDManagerFactory.getManager(keys, 2, true);
+
+		Random random = new Random(3);
+		List<byte[]> states = new ArrayList<byte[]>();
+		for (int i=0 ; i<200 ; i++) {
+			byte[] state = new byte[keys.size()];
+			for (int v=0 ; v<state.length ; v++) {
+				state[v] = (byte)random.nextInt(2);
+			}
+			states.add(state);
+		}
+		int[] cubes = new int[states.size()];
+		for (int i=0 ; i<cubes.length ; i++) {
+			cubes[i] = ddmanager.nodeFromState(states.get(i), 1);
+		}
+
+		// linear fold
+		int expected = 0;
+		for (int cube: cubes) {
+			int next = MDDBaseOperators.OR.combine(ddmanager, expected, cube);
+			ddmanager.free(expected);
+			expected = next;
+		}
+
+		assertEquals(expected, BalancedReduction.reduce(ddmanager, MDDBaseOperators.OR, cubes));
+		assertEquals(expected, ddmanager.nodeFromStates(states, 1));
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			assertEquals(expected, BalancedReduction.reduce(ddmanager, MDDBaseOperators.OR, cubes, executor));
+		} finally {
+			executor.shutdown();
+		}
+		for (int i=0 ; i<3 ; i++) {
+			ddmanager.free(expected);
+		}
+		for (byte[] state: states) {
+			assertEquals(1, ddmanager.reach(expected, state));
+		}
+		ddmanager.free(expected);
+		for (int cube: cubes) {
+			ddmanager.free(cube);
+		}
+		assertEquals(0, ddmanager.getNodeCount());
+
+		// non-associative operators keep the linear fold
+		MDDOperator overwrite = OverwriteOperator.getOverwriteAction(0);
+		int[] literals = new int[4];
+		for (int i=0 ; i<literals.length ; i++) {
+			literals[i] = ddmanager.getVariableForKey("var"+i).getNode(0, 1);
+		}
+		int linear = ddmanager.use(literals[0]);
+		for (int i=1 ; i<literals.length ; i++) {
+			int next = overwrite.combine(ddmanager, linear, literals[i]);
+			ddmanager.free(linear);
+			linear = next;
+		}
+		int balanced = BalancedReduction.reduce(ddmanager, overwrite, literals);
+		assertTrue(linear != balanced);
+		assertEquals(linear, overwrite.combine(ddmanager, literals));
+		ddmanager.free(linear);
+		ddmanager.free(linear);
+		ddmanager.free(balanced);
+		for (int literal: literals) {
+			ddmanager.free(literal);
+		}
+		assertEquals(0, ddmanager.getNodeCount());
+	}
+
+	@Test
+	public void testTableImport() {
+		MDDVariableFactory vbuilder = new MDDVariableFactory();
+		for (int i=0 ; i<4 ; i++) {
+			vbuilder.add("var"+i, (byte)(2 + i%2));
+		}
+		MDDManager ddmanager = MDDManagerFactory.getManager(vbuilder, 3);
+		MDDVariable[] variables = ddmanager.getAllVariables();
+
+		// dense table over three variables, not in the order of the store
+		MDDVariable[] tableVars = { variables[3], variables[0], variables[1] };
+		byte[] table = new byte[3*2*3];
+		for (int i=0 ; i<table.length ; i++) {
+			table[i] = (byte)((i*7) % 5 % 3);
+		}
+		int node = ddmanager.nodeFromTable(tableVars, table);
+
+		byte[] state = new byte[variables.length];
+		List<byte[]> tuples = new ArrayList<byte[]>();
+		for (int i=0 ; i<table.length ; i++) {
+			state[3] = (byte)(i / 6);
+			state[0] = (byte)((i / 3) % 2);
+			state[1] = (byte)(i % 3);
+			for (byte v=0 ; v<variables[2].nbval ; v++) {
+				state[2] = v;
+				assertEquals(table[i], ddmanager.reach(node, state));
+			}
+			if (table[i] == 2) {
+				tuples.add(new byte[] {state[3], state[0], state[1]});
+			}
+		}
+
+		// table constraint on the same variables, compared with the sum of its states
+		int fromTuples = ddmanager.nodeFromTuples(tableVars, tuples, 2);
+		List<byte[]> states = new ArrayList<byte[]>();
+		for (byte[] tuple: tuples) {
+			byte[] s = { tuple[1], tuple[2], -1, tuple[0] };
+			states.add(s);
+		}
+		int fromStates = ddmanager.nodeFromStates(states, 2);
+		assertEquals(fromStates, fromTuples);
+
+		// a constant table is reduced to a leaf
+		assertEquals(0, ddmanager.nodeFromTable(tableVars, new byte[table.length]));
+
+		ddmanager.free(node);
+		ddmanager.free(fromTuples);
+		ddmanager.free(fromStates);
+		assertEquals(0, ddmanager.getNodeCount());
+	}
+
+	@Test
+	public void testSegments() {
+		checkSegments(getSimpleManager(20));
+	}
+
+	@Test
+	public void testOffHeap() {
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			keys.add("var" + i);
+		}
+		MDDManager ddmanager = MDDManagerFactory.getManager(keys, 2, false, true);
+		checkSegments(ddmanager);
+
+		MDDVariable[] variables = ddmanager.getAllVariables();
+		int node = variables[3].getNode(0, 1);
+		ddmanager.close();
+		try {
+			ddmanager.getChild(node, 0);
+			fail("A closed manager should not be usable");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	private void checkSegments(MDDManager ddmanager) {
+		MDDVariable[] variables = ddmanager.getAllVariables();
+
+		// build enough nodes to fill several storage segments
+		int[] nodes = new int[1 << 14];
+		for (int i=0 ; i<nodes.length ; i++) {
+			int node = 1;
+			for (int v=13 ; v>=0 ; v--) {
+				if (((i >> v) & 1) == 1) {
+					node = variables[v].getNodeFree(0, node);
+				} else {
+					node = variables[v].getNodeFree(node, 0);
+				}
+			}
+			nodes[i] = node;
+		}
+		assertEquals(2*nodes.length - 2, ddmanager.getNodeCount());
+
+		byte[] state = new byte[variables.length];
+		for (int i=0 ; i<nodes.length ; i+=37) {
+			for (int v=0 ; v<14 ; v++) {
+				state[v] = (byte)((i >> v) & 1);
+			}
+			assertEquals(1, ddmanager.reach(nodes[i], state));
+			state[i%14] = (byte)(1 - state[i%14]);
+			assertEquals(0, ddmanager.reach(nodes[i], state));
+		}
+
+		boolean[] support = ddmanager.collectDecisionVariables(nodes[nodes.length-1]);
+		for (int v=0 ; v<variables.length ; v++) {
+			assertEquals(v < 14, support[v]);
+		}
+		assertTrue(ddmanager.getFingerprint(nodes[0]) != ddmanager.getFingerprint(nodes[nodes.length-1]));
+
+		for (int node: nodes) {
+			ddmanager.free(node);
+		}
+		assertEquals(0, ddmanager.getNodeCount());
+	}
+
 	public static MDDManager getSimpleManager(int size) {
 		List<String> keys = new ArrayList<String>();
 		for (int i = 0; i < size; i++) {
@@ -0,0 +1,72 @@
+package org.colomoto.mddlib.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.colomoto.mddlib.MDDLimitException;
+import org.colomoto.mddlib.MDDVariable;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Tests on the internals of the MDD store.
+ *
+ * @author Aurelien Naldi
+ */
+public class TestMDDStore {
+
+	@Test
+	public void testUniqueTableLimit() {
+		checkUniqueTableLimit(false);
+		checkUniqueTableLimit(true);
+	}
+
+	private void checkUniqueTableLimit(boolean offHeap) {
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			keys.add("var" + i);
+		}
+		// the hashtable grows once, up to the limit, and then holds 180 nodes
+		MDDStoreImpl store = new MDDStoreImpl(keys, 2, offHeap, 360);
+		MDDVariable[] variables = store.getAllVariables();
+
+		// each level adds two distinct nodes above each node of the previous levels
+		List<Integer> nodes = new ArrayList<Integer>();
+		nodes.add(1);
+		try {
+			for (int v=variables.length-1 ; v>=0 ; v--) {
+				int size = nodes.size();
+				for (int i=0 ; i<size ; i++) {
+					nodes.add(variables[v].getNode(0, nodes.get(i)));
+					nodes.add(variables[v].getNode(nodes.get(i), 0));
+				}
+			}
+			fail("The unique table limit should be reached");
+		} catch (MDDLimitException e) {
+			// the refused node was not created
+			assertEquals(180, store.getNodeCount());
+			assertEquals(181, nodes.size());
+		}
+		assertEquals(1, store.getStatistics().rehashCount);
+
+		// existing nodes are still found, new nodes are accepted after freeing some nodes
+		int last = nodes.get(nodes.size()-1);
+		assertEquals(last, store.getNodeVariable(last).getNode(store.getChild(last, 0), store.getChild(last, 1)));
+		store.free(last);
+		store.free(last);
+		nodes.remove(nodes.size()-1);
+		int node = variables[0].getNode(0, nodes.get(nodes.size()-1));
+		assertEquals(180, store.getNodeCount());
+		store.free(node);
+
+		for (int i=1 ; i<nodes.size() ; i++) {
+			store.free(nodes.get(i));
+		}
+		assertEquals(0, store.getNodeCount());
+		assertTrue(store.getStatistics().reservedHashBytes <= 4L * 3 * 360);
+		store.close();
+	}
+}
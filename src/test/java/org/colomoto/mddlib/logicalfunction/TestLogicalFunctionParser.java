@@ -2,12 +2,26 @@ package org.colomoto.mddlib.logicalfunction;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.colomoto.mddlib.MDDLimitException;
 import org.colomoto.mddlib.MDDManager;
 import org.colomoto.mddlib.PathSearcher;
+import org.colomoto.mddlib.logicalfunction.operators.AndOperatorFactory;
+import org.colomoto.mddlib.logicalfunction.operators.NotOperatorFactory;
+import org.colomoto.mddlib.logicalfunction.operators.OrOperatorFactory;
+import org.colomoto.mddlib.operators.AbstractOperator;
+import org.colomoto.mddlib.operators.MDDBaseOperators;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 /**
  * Simple test suite for the logical function parser.
@@ -34,6 +48,222 @@ public class TestLogicalFunctionParser {
 		debug(parser, opFactory, "var1 & (var2 & var3) & var4 | var5 | (var6 & var7)", 7, 9);
 	}
 
+	@Test
+	public void testTokenizer() {
+		List<String> operands = new ArrayList<String>();
+		for (int i=0 ; i<12 ; i++) {
+			operands.add("var"+i);
+		}
+		operands.add("var1_b");
+		SimpleOperandFactory<String> opFactory = new SimpleOperandFactory<String>(operands);
+		FunctionParser parser = new FunctionParser();
+
+		// operands sharing a prefix, missing or unusual spaces
+		debug(parser, opFactory, "var1&var10", 2, 1);
+		debug(parser, opFactory, "var1|var1_b", 2, 2);
+		debug(parser, opFactory, "!var10&(var11|var1)", 4, 2);
+		debug(parser, opFactory, "\tvar1 &\n  ( var2|var3 )  ", 3, 2);
+		assertEquals("var1 & (var10 | !var11)", parser.compile(opFactory, "var1&(var10|!var11)").toString(false));
+
+		// long functions are parsed in linear time
+		StringBuilder sb = new StringBuilder("var0");
+		for (int i=1 ; i<20000 ; i++) {
+			sb.append(i%2 == 0 ? " & " : "|").append("var").append(i%12);
+		}
+		FunctionNode f = parser.compile(opFactory, sb.toString());
+		assertNotNull(f);
+
+		// long chains of the same operator are merged instead of being nested
+		MDDManager ddmanager = opFactory.getMDDManager();
+		int node = f.getMDD(ddmanager);
+		assertEquals(1, ddmanager.reach(node, new byte[] {1,0,0,0,0,0,0,0,0,0,0,0,0}));
+		assertEquals(0, ddmanager.reach(node, new byte[] {0,1,0,1,0,1,0,0,0,1,0,1,0}));
+		ddmanager.free(node);
+		assertEquals(0, ddmanager.getNodeCount());
+
+		// two operands without operator
+		assertNull(parser.compile(opFactory, "var1 var2"));
+	}
+
+	@Test
+	public void testCompiler() {
+		List<String> operands = new ArrayList<String>();
+		for (int i=0 ; i<8 ; i++) {
+			operands.add("var"+i);
+		}
+		SimpleOperandFactory<String> opFactory = new SimpleOperandFactory<String>(operands);
+		FunctionParser parser = new FunctionParser();
+		MDDManager ddmanager = opFactory.getMDDManager();
+
+		String[] functions = {
+				"var1 & (var2 | !var3)",
+				"(var2 | !var3) & var1 | var5",
+				"var4 | (var2 | !var3)",
+				"var1 & (var2 | !var3)",
+				"var6",
+		};
+		int[] mdds = new FunctionCompiler(ddmanager).compile(parser, opFactory, functions);
+		assertEquals(functions.length, mdds.length);
+		assertEquals(mdds[0], mdds[3]);
+		for (int i=0 ; i<functions.length ; i++) {
+			int expected = parser.compile(opFactory, functions[i]).getMDD(ddmanager);
+			assertEquals(expected, mdds[i]);
+			ddmanager.free(expected);
+		}
+		for (int mdd: mdds) {
+			ddmanager.free(mdd);
+		}
+		assertEquals(0, ddmanager.getNodeCount());
+
+		// chains of the same operator are merged in a single operation
+		AbstractOperator and = (AbstractOperator)MDDBaseOperators.AND;
+		long merges = and.getMultipleMergeCount();
+		StringBuilder chain = new StringBuilder("var0");
+		for (int i=1 ; i<5000 ; i++) {
+			chain.append(i%2 == 0 ? " & var" : " & !var").append(i % operands.size());
+		}
+		int[] chained = new FunctionCompiler(ddmanager).compile(parser, opFactory, new String[] {"var1 & var2 & var3 & var4", chain.toString()});
+		assertEquals(merges+2, and.getMultipleMergeCount());
+		int expected = parser.compile(opFactory, "var1 & var2 & var3 & var4").getMDD(ddmanager);
+		assertEquals(expected, chained[0]);
+		ddmanager.free(expected);
+		expected = parser.compile(opFactory, chain.toString()).getMDD(ddmanager);
+		assertEquals(expected, chained[1]);
+		ddmanager.free(expected);
+		ddmanager.free(chained[0]);
+		ddmanager.free(chained[1]);
+		assertEquals(0, ddmanager.getNodeCount());
+
+		// a failure releases the partial results
+		List<String> known = new ArrayList<String>(operands);
+		known.remove("var7");
+		MDDManager partial = new SimpleOperandFactory<String>(known).getMDDManager();
+		try {
+			new FunctionCompiler(partial).compile(parser, opFactory, new String[] {"var1 & var2", "var1 & (var3 | var7)"});
+			fail("Operands missing in the manager should not be built");
+		} catch (RuntimeException e) {
+			// expected
+		}
+		assertEquals(0, partial.getNodeCount());
+	}
+
+	@Test
+	public void testParallelCompiler() throws InterruptedException {
+		List<String> operands = new ArrayList<String>();
+		for (int i=0 ; i<10 ; i++) {
+			operands.add("var"+i);
+		}
+		SimpleOperandFactory<String> opFactory = new SimpleOperandFactory<String>(operands);
+		FunctionParser parser = new FunctionParser();
+		MDDManager ddmanager = opFactory.getMDDManager();
+
+		Random random = new Random(42);
+		String[] functions = new String[300];
+		for (int f=0 ; f<functions.length ; f++) {
+			StringBuilder sb = new StringBuilder();
+			for (int t=0 ; t<6 ; t++) {
+				if (t > 0) {
+					sb.append(random.nextBoolean() ? " & " : " | ");
+				}
+				if (random.nextBoolean()) {
+					sb.append("!");
+				}
+				sb.append("var").append(random.nextInt(operands.size()));
+			}
+			functions[f] = sb.toString();
+		}
+
+		FunctionCompiler compiler = new FunctionCompiler(ddmanager);
+		int[] expected = compiler.compile(parser, opFactory, functions);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			int[] mdds = compiler.compile(parser, opFactory, functions, executor);
+			assertArrayEquals(expected, mdds);
+			for (int mdd: mdds) {
+				ddmanager.free(mdd);
+			}
+
+			// slices using a variable missing in the manager fail, the others are released
+			List<String> known = new ArrayList<String>(operands);
+			known.remove("var9");
+			MDDManager partial = new SimpleOperandFactory<String>(known).getMDDManager();
+			try {
+				new FunctionCompiler(partial).compile(parser, opFactory, functions, executor);
+				fail("Operands missing in the manager should not be built");
+			} catch (RuntimeException e) {
+				// expected
+			}
+			assertEquals(0, partial.getNodeCount());
+
+			// private stores follow the node limit of the target: the large intermediate disjunction
+			// can not be built, even if the final result is small
+			String[] limited = { "(var0 & var5 | var1 & var6 | var2 & var7 | var3 & var8 | var4 & var9) & var0 & var1 & var2 & var3 & var4" };
+			MDDManager bounded = new SimpleOperandFactory<String>(operands).getMDDManager();
+			FunctionCompiler boundedCompiler = new FunctionCompiler(bounded);
+			bounded.setLimits(20, 0);
+			try {
+				boundedCompiler.compile(parser, opFactory, limited, executor);
+				fail("The node limit should be reached");
+			} catch (MDDLimitException e) {
+				assertEquals(0, bounded.getNodeCount());
+			}
+			bounded.setLimits(0, 0);
+			int[] small = boundedCompiler.compile(parser, opFactory, limited, executor);
+			assertTrue(bounded.getNodeCount() < 20);
+			bounded.free(small[0]);
+			assertEquals(0, bounded.getNodeCount());
+		} finally {
+			executor.shutdown();
+		}
+		for (int mdd: expected) {
+			ddmanager.free(mdd);
+		}
+		assertEquals(0, ddmanager.getNodeCount());
+	}
+
+	@Test
+	public void testSimplifier() {
+		List<String> operands = new ArrayList<String>();
+		for (int i=0 ; i<8 ; i++) {
+			operands.add("var"+i);
+		}
+		SimpleOperandFactory<String> opFactory = new SimpleOperandFactory<String>(operands);
+		FunctionParser parser = new FunctionParser();
+		MDDManager ddmanager = opFactory.getMDDManager();
+
+		checkSimplified(parser, opFactory, "!(!var1)", "var1");
+		checkSimplified(parser, opFactory, "!(var1 & !var2)", "!var1 | var2");
+		checkSimplified(parser, opFactory, "!(var1 | (var2 & !var3))", "!var1 & (!var2 | var3)");
+		checkSimplified(parser, opFactory, "var1 & var2 & var1", "var1 & var2");
+		checkSimplified(parser, opFactory, "var1 & (var2 | var1) & var3", "var1 & var3");
+		checkSimplified(parser, opFactory, "var1 | (var2 & var1) | var3", "var1 | var3");
+		checkSimplified(parser, opFactory, "var1 & !var1 & var2", "0");
+		checkSimplified(parser, opFactory, "var4 | var2 | !(!var4)", "var4 | var2");
+		checkSimplified(parser, opFactory, "var2 | !var2", "1");
+
+		FunctionNode f = AndOperatorFactory.FACTORY.getNode(ValueNode.TRUE, parser.compile(opFactory, "var1 | var2"));
+		assertEquals("var1 | var2", FunctionSimplifier.simplify(f).toString());
+		f = OrOperatorFactory.FACTORY.getNode(ValueNode.TRUE, parser.compile(opFactory, "var1 | var2"));
+		assertEquals("1", FunctionSimplifier.simplify(f).toString());
+		f = NotOperatorFactory.FACTORY.getNode(AndOperatorFactory.FACTORY.getNode(ValueNode.FALSE, parser.compile(opFactory, "var1")));
+		assertEquals("1", FunctionSimplifier.simplify(f).toString());
+		assertEquals(0, ddmanager.getNodeCount());
+	}
+
+	private void checkSimplified(FunctionParser parser, OperandFactory opFactory, String function, String expected) {
+		FunctionNode f = parser.compile(opFactory, function);
+		FunctionNode simplified = FunctionSimplifier.simplify(f);
+		assertEquals(expected, simplified.toString());
+
+		// the simplified function has the same MDD
+		MDDManager ddmanager = opFactory.getMDDManager();
+		int mdd = f.getMDD(ddmanager);
+		int smdd = simplified.getMDD(ddmanager);
+		assertEquals(mdd, smdd);
+		ddmanager.free(mdd);
+		ddmanager.free(smdd);
+	}
+
 	public static void debug(FunctionParser parser, OperandFactory opFactory, String function, int nodeCount, int solutionCount) {
 		FunctionNode f = parser.compile(opFactory, function);
 		MDDManager ddFactory = opFactory.getMDDManager();